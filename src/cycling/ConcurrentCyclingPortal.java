@@ -0,0 +1,1435 @@
+// Part of the cycling package
+package cycling;
+
+// Java packages in use
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * ConcurrentCyclingPortal is a CyclingPortal that can be shared between
+ * threads. Methods that only read the portal hold a shared read lock, so
+ * any number of them run in parallel; methods that change it hold the
+ * exclusive write lock, so they run one at a time and never alongside a
+ * read.
+ * <p>
+ * Registering and deleting results is the exception: it only changes one
+ * stage, so it holds the shared lock plus the write lock of the stage's
+ * stripe (one of a fixed set of locks, chosen by stage ID). Result feeds
+ * for different stages therefore don't wait for each other. Methods that
+ * read results hold the read locks of the stripes of the stages they
+ * read, taken in ascending order, so they see each stage either before
+ * or after a registration. Methods that change more than one stage, such
+ * as removeRider and removeRaceById, still hold the exclusive lock, so
+ * they are atomic and leave the portal unchanged if they throw.
+ * <p>
+ * Reads still fill the caches kept by races and stages; those caches
+ * synchronize their own (short) rebuilds, so parallel readers only wait
+ * for each other on the first read after a change. The entity lookups
+ * (getRace, getStage, ...) hold the read lock too, but the objects they
+ * return are only safe to use inside the portal's own methods.
+ * <p>
+ * The race classifications a race caches (general, points, mountain
+ * points and team) are read without any lock while the cache is up to
+ * date. The most frequent reads therefore take no lock, and the only
+ * shared memory they write to is the hit counter, a LongAdder that
+ * spreads contention over separate cells. They scale with the number of
+ * readers. Each write publishes a new, never-changed map
+ * of the races by ID before it releases the lock, and each race keeps
+ * its cache as a never-changed snapshot tagged with the race's version;
+ * a read that finds the race's cache out of date falls back to the
+ * locks, and fills the cache for the next reader. ConcurrentReadBenchmark
+ * measures how these reads scale with threads.
+ * <p>
+ * The lock is reentrant, so the portal's methods can call each other,
+ * and a write may read.
+ * <p>
+ * Results can also be submitted without waiting for any lock, through
+ * submitRiderResults: they go into a lock-free queue, and a single applier
+ * thread registers them in batches, completing a future for each. Erasing
+ * or loading the portal fails the futures of the results still waiting,
+ * rather than registering them in the new portal's stages.
+ */
+public class ConcurrentCyclingPortal extends CyclingPortal {
+
+    // Instance attributes
+    private final ReentrantReadWriteLock lock;
+    private final ReentrantReadWriteLock[] stageLocks; // Guard the results of the stages in each stripe
+
+    // Results submitted with submitRiderResults, waiting for the applier thread, which only runs while there are some
+    private final transient MpscRingBuffer<SubmittedResult> ingestQueue;
+    private final transient AtomicBoolean applierRunning;
+    private transient volatile Thread applier;
+    private transient volatile long ingestGeneration; // Incremented whenever the portal is erased or loaded
+
+    // The races by ID as of the end of the last write, for the classification reads that take no lock.
+    // It is replaced rather than changed, so it can be read while the next write is running.
+    private transient volatile IntObjectMap<Race> publishedRaces;
+
+    // Static attributes
+    private static final int STAGE_LOCK_STRIPES = 64; // A power of two, so a stage's stripe is its ID masked
+    private static final int[] ALL_STRIPES = IntStream.range(0, STAGE_LOCK_STRIPES).toArray();
+    private static final int INGEST_QUEUE_CAPACITY = 1 << 14;
+    private static final int INGEST_BATCH_SIZE = 256;
+    private static final long APPLIER_IDLE_NANOS = 1_000_000L; // How long the applier sleeps when the queue is empty
+    private static final int APPLIER_IDLE_SLEEPS = 1000; // How many sleeps in a row before the applier stops
+
+    // Constructors
+    public ConcurrentCyclingPortal()
+    {
+        this(ResultStorage.HEAP);
+    }
+
+    /**
+	 * Creates an empty, thread-safe portal whose stages keep their results in the given kind of storage.
+     *
+	 * @param resultStorage Where stage results are stored.
+	 */
+    public ConcurrentCyclingPortal(ResultStorage resultStorage)
+    {
+        super(resultStorage);
+        this.lock = new ReentrantReadWriteLock();
+        this.stageLocks = new ReentrantReadWriteLock[STAGE_LOCK_STRIPES];
+        for (int i=0; i<STAGE_LOCK_STRIPES; i++)
+        {
+            this.stageLocks[i] = new ReentrantReadWriteLock();
+        }
+        this.ingestQueue = new MpscRingBuffer<SubmittedResult>(INGEST_QUEUE_CAPACITY);
+        this.applierRunning = new AtomicBoolean();
+        this.publishedRaces = new IntObjectMap<Race>();
+    }
+
+    private void lockWrite()
+    {
+        this.lock.writeLock().lock();
+    }
+
+    private void unlockWrite()
+    {
+        // The outermost write publishes the races it leaves behind, before any other thread can write.
+        if (this.lock.getWriteHoldCount() == 1)
+        {
+            IntObjectMap<Race> races = new IntObjectMap<Race>(this.races.size());
+            for (Race race : this.races)
+            {
+                races.put(race.getId(), race);
+            }
+            this.publishedRaces = races;
+        }
+        this.lock.writeLock().unlock();
+    }
+
+    /**
+	 * Returns a copy of a classification a race has cached, without taking any lock.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @param classification The classification.
+	 * @return A copy of the classification, or null if the race doesn't exist, or its cache is out of date,
+     *         so the classification must be read under the locks.
+	 */
+    private int[] getCachedClassificationWithoutLocking(int raceId, RaceClassification classification)
+    {
+        Race race = this.publishedRaces.get(raceId);
+        int[] cached = race != null ? race.getCachedClassification(classification) : null;
+        if (cached == null)
+        {
+            return null;
+        }
+        this.classificationCacheHits.increment();
+        return cached.clone();
+    }
+
+    /**
+	 * Returns the team classification a race has cached, without taking any lock.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @return The team classification, whose arrays must be copied before they are handed out, or null if
+     *         the race doesn't exist, or its cache is out of date.
+	 */
+    private TeamClassification getCachedTeamClassificationWithoutLocking(int raceId)
+    {
+        Race race = this.publishedRaces.get(raceId);
+        TeamClassification cached = race != null ? race.getCachedTeamClassification() : null;
+        if (cached != null)
+        {
+            this.classificationCacheHits.increment();
+        }
+        return cached;
+    }
+
+    /**
+	 * Returns the lock of the stripe a stage's results are guarded by.
+     *
+	 * @param stageId The ID of the stage.
+	 * @return The lock.
+	 */
+    private ReentrantReadWriteLock getStageLock(int stageId)
+    {
+        return this.stageLocks[stageId & (STAGE_LOCK_STRIPES - 1)];
+    }
+
+    /**
+	 * Takes the read locks of the stripes of a race's stages, in ascending order. The caller must hold
+     * the shared lock, so the race's stages can't change while they are looked up.
+     *
+	 * @param raceId The ID of the race.
+	 * @return The stripes locked, to be passed to unlockStages. Empty if the race doesn't exist.
+	 */
+    private int[] lockRaceStages(int raceId)
+    {
+        BitSet stripes = new BitSet(STAGE_LOCK_STRIPES);
+        Race race = this.findRace(raceId);
+        if (race != null)
+        {
+            for (int stageId : race.getStages())
+            {
+                stripes.set(stageId & (STAGE_LOCK_STRIPES - 1));
+            }
+        }
+        int[] locked = stripes.stream().toArray();
+        this.lockStages(locked);
+        return locked;
+    }
+
+    private void lockStages(int[] stripes)
+    {
+        for (int stripe : stripes)
+        {
+            this.stageLocks[stripe].readLock().lock();
+        }
+    }
+
+    private void unlockStages(int[] stripes)
+    {
+        for (int i=stripes.length-1; i>=0; i--)
+        {
+            this.stageLocks[stripes[i]].readLock().unlock();
+        }
+    }
+
+    /**
+	 * Starts the applier thread if it isn't running, or wakes it if it is sleeping.
+	 */
+    private void wakeApplier()
+    {
+        if (this.applierRunning.compareAndSet(false, true))
+        {
+            Thread applier = new Thread(this::applySubmittedResults, "cycling-portal-result-applier");
+            applier.setDaemon(true);
+            this.applier = applier;
+            applier.start();
+        }
+        else
+        {
+            Thread applier = this.applier;
+            if (applier != null)
+            {
+                LockSupport.unpark(applier);
+            }
+        }
+    }
+
+    /**
+	 * The applier thread's loop: takes the submitted results off the queue in batches and registers them.
+     * It stops once the queue has been empty for a while, and is started again by the next submission.
+	 */
+    private void applySubmittedResults()
+    {
+        SubmittedResult[] batch = new SubmittedResult[INGEST_BATCH_SIZE];
+        Throwable[] failures = new Throwable[INGEST_BATCH_SIZE];
+        int idleSleeps = 0;
+        boolean stopped = false; // Whether the applier stopped because the queue was idle
+        try
+        {
+            while (true)
+            {
+                int size = this.applyBatch(batch, failures);
+                if (size > 0)
+                {
+                    idleSleeps = 0;
+                }
+                else if (!this.ingestQueue.isEmpty())
+                {
+                    // A producer has claimed the next slot but not yet filled it.
+                    Thread.yield();
+                }
+                else if (idleSleeps < APPLIER_IDLE_SLEEPS)
+                {
+                    LockSupport.parkNanos(APPLIER_IDLE_NANOS);
+                    idleSleeps++;
+                }
+                else
+                {
+                    // Stop, unless a result was submitted while stopping and no new applier has been started for it.
+                    this.applierRunning.set(false);
+                    if (this.ingestQueue.isEmpty() || !this.applierRunning.compareAndSet(false, true))
+                    {
+                        stopped = true;
+                        return;
+                    }
+                    idleSleeps = 0;
+                }
+            }
+        }
+        catch (Throwable e)
+        {
+            // The results of the batch that weren't completed before the error fail with it.
+            for (int i=0; i<INGEST_BATCH_SIZE; i++)
+            {
+                if (batch[i] != null)
+                {
+                    batch[i].getFuture().completeExceptionally(e);
+                }
+            }
+            throw e;
+        }
+        finally
+        {
+            if (!stopped)
+            {
+                // This applier is dying, so let a new one be started, and hand it any results still queued.
+                this.applierRunning.set(false);
+                if (!this.ingestQueue.isEmpty())
+                {
+                    this.wakeApplier();
+                }
+            }
+        }
+    }
+
+    /**
+	 * Takes a batch of submitted results off the queue and registers them, by the same rules as
+     * registerRiderResultsInStage, then completes their futures. Consecutive results for stages in the
+     * same stripe are registered under one lock of it.
+     *
+	 * @param batch An empty array, whose length is the most results to take, used to hold them.
+	 * @param failures An array as long as the batch, used to hold what each result threw.
+	 * @return The number of results taken; 0 if the queue was empty.
+	 */
+    private int applyBatch(SubmittedResult[] batch, Throwable[] failures)
+    {
+        int size = 0;
+        this.lock.readLock().lock();
+        try
+        {
+            // The results are taken under the shared lock, so erasing or loading (which hold the exclusive
+            // lock) can take the rest off the queue themselves.
+            SubmittedResult result;
+            while (size < batch.length && (result = this.ingestQueue.poll()) != null)
+            {
+                batch[size++] = result;
+            }
+
+            int i = 0;
+            while (i < size)
+            {
+                ReentrantReadWriteLock stageLock = this.getStageLock(batch[i].getStageId());
+                stageLock.writeLock().lock();
+                try
+                {
+                    for (; i < size && this.getStageLock(batch[i].getStageId()) == stageLock; i++)
+                    {
+                        try
+                        {
+                            if (batch[i].getGeneration() != this.ingestGeneration)
+                            {
+                                // Submitted before an erase or load that it was still being added during.
+                                throw new IllegalStateException("The portal was erased or loaded after the result was submitted.");
+                            }
+                            super.registerRiderResultsInStage(batch[i].getStageId(), batch[i].getRiderId(),
+                            batch[i].getCheckpoints());
+                        }
+                        catch (Throwable e)
+                        {
+                            // Errors are caught too, so one bad result can't stop the others being applied.
+                            failures[i] = e;
+                        }
+                    }
+                }
+                finally
+                {
+                    stageLock.writeLock().unlock();
+                }
+            }
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+
+        // The futures are only completed once the locks are released, as their callbacks may call the portal.
+        for (int i=0; i<size; i++)
+        {
+            if (failures[i] == null)
+            {
+                batch[i].getFuture().complete(null);
+            }
+            else
+            {
+                batch[i].getFuture().completeExceptionally(failures[i]);
+            }
+            batch[i] = null;
+            failures[i] = null;
+        }
+        return size;
+    }
+
+    /**
+	 * Takes every result waiting in the queue off it, so that none is registered in the stages of an erased
+     * or loaded portal. The caller must hold the exclusive lock, and fail the results' futures once it has
+     * released it.
+     *
+	 * @return The results taken off the queue.
+	 */
+    private ArrayList<SubmittedResult> discardSubmittedResults()
+    {
+        // A result a producer is still adding carries the old generation, so the applier fails it instead.
+        this.ingestGeneration++;
+        ArrayList<SubmittedResult> discarded = new ArrayList<SubmittedResult>();
+        SubmittedResult result;
+        while ((result = this.ingestQueue.poll()) != null)
+        {
+            discarded.add(result);
+        }
+        return discarded;
+    }
+
+    private void failDiscardedResults(ArrayList<SubmittedResult> discarded)
+    {
+        for (SubmittedResult result : discarded)
+        {
+            result.getFuture().completeExceptionally(
+                new IllegalStateException("The portal was erased or loaded before the result was registered."));
+        }
+    }
+
+	@Override
+	public Race getRace(int raceId) {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getRace(raceId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public Stage getStage(int stageId) {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getStage(stageId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public Segment getSegment(int segmentId) {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getSegment(segmentId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public Team getTeam(int teamId) {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getTeam(teamId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public Rider getRider(int riderId) {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getRider(riderId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public void deleteRace(Race race) {
+        this.lockWrite();
+        try
+        {
+            super.deleteRace(race);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public IntLongMap getRiderToTotalRaceTimeMap(int raceId, boolean useAdjusted) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getRiderToTotalRaceTimeMap(raceId, useAdjusted);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getAnyTypeOfRidersPointsInRace(int raceId, String type) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getAnyTypeOfRidersPointsInRace(raceId, type);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getAnyTypeOfRidersPointClassificationRank(int raceId, String type) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getAnyTypeOfRidersPointClassificationRank(raceId, type);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRaceIds() {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getRaceIds();
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int createRace(String name, String description) throws IllegalNameException, InvalidNameException {
+        this.lockWrite();
+        try
+        {
+            return super.createRace(name, description);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.viewRaceDetails(raceId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public void removeRaceById(int raceId) throws IDNotRecognisedException {
+        this.lockWrite();
+        try
+        {
+            super.removeRaceById(raceId);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getNumberOfStages(raceId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int addStageToRace(int raceId, String stageName, String description, double length, LocalDateTime startTime,
+			StageType type) throws IDNotRecognisedException, IllegalNameException, InvalidNameException,
+			InvalidLengthException {
+        this.lockWrite();
+        try
+        {
+            return super.addStageToRace(raceId, stageName, description, length, startTime, type);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getRaceStages(raceId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public double getStageLength(int stageId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getStageLength(stageId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public void removeStageById(int stageId) throws IDNotRecognisedException {
+        this.lockWrite();
+        try
+        {
+            super.removeStageById(stageId);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public int addCategorizedClimbToStage(int stageId, Double location, SegmentType type, Double averageGradient,
+			Double length) throws IDNotRecognisedException, InvalidLocationException, InvalidStageStateException,
+			InvalidStageTypeException {
+        this.lockWrite();
+        try
+        {
+            return super.addCategorizedClimbToStage(stageId, location, type, averageGradient, length);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public int addIntermediateSprintToStage(int stageId, double location) throws IDNotRecognisedException,
+			InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
+        this.lockWrite();
+        try
+        {
+            return super.addIntermediateSprintToStage(stageId, location);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public void removeSegment(int segmentId) throws IDNotRecognisedException, InvalidStageStateException {
+        this.lockWrite();
+        try
+        {
+            super.removeSegment(segmentId);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
+        this.lockWrite();
+        try
+        {
+            super.concludeStagePreparation(stageId);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public int[] getStageSegments(int stageId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getStageSegments(stageId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int createTeam(String name, String description) throws IllegalNameException, InvalidNameException {
+        this.lockWrite();
+        try
+        {
+            return super.createTeam(name, description);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public void removeTeam(int teamId) throws IDNotRecognisedException {
+        this.lockWrite();
+        try
+        {
+            super.removeTeam(teamId);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public int[] getTeams() {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getTeams();
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getTeamRiders(teamId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int createRider(int teamID, String name, int yearOfBirth)
+            throws IDNotRecognisedException, IllegalArgumentException {
+        this.lockWrite();
+        try
+        {
+            return super.createRider(teamID, name, yearOfBirth);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public void removeRider(int riderId) throws IDNotRecognisedException {
+        this.lockWrite();
+        try
+        {
+            super.removeRider(riderId);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
+			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
+			InvalidStageStateException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).writeLock().lock();
+        try
+        {
+            super.registerRiderResultsInStage(stageId, riderId, checkpoints);
+        }
+        finally
+        {
+            this.getStageLock(stageId).writeLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+    /**
+	 * Submits a rider's result in a stage, to be registered by the portal's applier thread rather than by
+     * the caller. The caller never waits: not for the portal's locks, and not for room in the ingest queue.
+     * If the queue is full, the result is rejected, and the caller may submit it again later. Results are
+     * registered in the order they are submitted, by the same rules as registerRiderResultsInStage.
+     *
+	 * @param stageId The ID of the stage the result refers to.
+	 * @param riderId The ID of the rider.
+	 * @param checkpoints An array of times at which the rider reached each of the segments of the stage.
+	 * @return A future completed once the result is registered, or completed exceptionally with:
+     *         <ul>
+     *         <li>the exception registerRiderResultsInStage would have thrown (e.g. DuplicatedResultException);</li>
+     *         <li>RejectedExecutionException, at once, if the ingest queue was full;</li>
+     *         <li>IllegalStateException, if the portal was erased or loaded before the result was registered.</li>
+     *         </ul>
+	 */
+    public CompletableFuture<Void> submitRiderResults(int stageId, int riderId, LocalTime... checkpoints)
+    {
+        SubmittedResult result = new SubmittedResult(this.ingestGeneration, stageId, riderId,
+            checkpoints == null ? null : checkpoints.clone());
+        boolean queued = this.ingestQueue.offer(result);
+        this.wakeApplier();
+        if (!queued)
+        {
+            result.getFuture().completeExceptionally(new RejectedExecutionException("The ingest queue is full."));
+        }
+        return result.getFuture();
+    }
+
+	@Override
+	public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getRiderResultsInStage(stageId, riderId);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getRiderAdjustedElapsedTimeInStage(stageId, riderId);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).writeLock().lock();
+        try
+        {
+            super.deleteRiderResultsInStage(stageId, riderId);
+        }
+        finally
+        {
+            this.getStageLock(stageId).writeLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getRidersRankInStage(stageId);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRidersRankInStage(int stageId, int from, int count) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getRidersRankInStage(stageId, from, count);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getRiderRankInStage(stageId, riderId);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getTopRidersInStage(int stageId, int k) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getTopRidersInStage(stageId, k);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public RiderPosition getRiderPositionInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getRiderPositionInStage(stageId, riderId);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getRankedAdjustedElapsedTimesInStage(stageId);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public long[] getRankedGapsInStage(int stageId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getRankedGapsInStage(stageId);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getRidersPointsInStage(stageId);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        this.getStageLock(stageId).readLock().lock();
+        try
+        {
+            return super.getRidersMountainPointsInStage(stageId);
+        }
+        finally
+        {
+            this.getStageLock(stageId).readLock().unlock();
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public void eraseCyclingPortal() {
+        ArrayList<SubmittedResult> discarded = new ArrayList<SubmittedResult>();
+        this.lockWrite();
+        try
+        {
+            super.eraseCyclingPortal();
+            if (this.lock.getWriteHoldCount() == 1)
+            {
+                // Unless this erase is part of a load, which discards the waiting results once it is done.
+                discarded = this.discardSubmittedResults();
+            }
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+        this.failDiscardedResults(discarded);
+	}
+
+	@Override
+	public void saveCyclingPortal(String filename) throws IOException {
+        this.lock.readLock().lock();
+        this.lockStages(ALL_STRIPES);
+        try
+        {
+            super.saveCyclingPortal(filename);
+        }
+        finally
+        {
+            this.unlockStages(ALL_STRIPES);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
+        ArrayList<SubmittedResult> discarded;
+        this.lockWrite();
+        try
+        {
+            super.loadCyclingPortal(filename);
+        }
+        finally
+        {
+            discarded = this.discardSubmittedResults();
+            this.unlockWrite();
+        }
+        this.failDiscardedResults(discarded);
+	}
+
+	@Override
+	public void removeRaceByName(String name) throws NameNotRecognisedException {
+        this.lockWrite();
+        try
+        {
+            super.removeRaceByName(name);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getGeneralClassificationTimesInRace(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public long[] getGeneralClassificationNanosInRace(int raceId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getGeneralClassificationNanosInRace(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public Duration[] getGeneralClassificationDurationsInRace(int raceId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getGeneralClassificationDurationsInRace(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public long[] getGeneralClassificationGapsInRace(int raceId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getGeneralClassificationGapsInRace(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+        int[] cached = this.getCachedClassificationWithoutLocking(raceId, RaceClassification.POINTS);
+        if (cached != null)
+        {
+            return cached;
+        }
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getRidersPointsInRace(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+        int[] cached = this.getCachedClassificationWithoutLocking(raceId, RaceClassification.MOUNTAIN_POINTS);
+        if (cached != null)
+        {
+            return cached;
+        }
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getRidersMountainPointsInRace(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+        int[] cached = this.getCachedClassificationWithoutLocking(raceId, RaceClassification.GENERAL_CLASSIFICATION_RANK);
+        if (cached != null)
+        {
+            return cached;
+        }
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getRidersGeneralClassificationRank(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getTopGeneralClassification(int raceId, int k) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getTopGeneralClassification(raceId, k);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public RiderPosition getRiderPositionInRace(int raceId, int riderId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getRiderPositionInRace(raceId, riderId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+        int[] cached = this.getCachedClassificationWithoutLocking(raceId, RaceClassification.POINT_CLASSIFICATION_RANK);
+        if (cached != null)
+        {
+            return cached;
+        }
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getRidersPointClassificationRank(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+        int[] cached = this.getCachedClassificationWithoutLocking(raceId, RaceClassification.MOUNTAIN_POINT_CLASSIFICATION_RANK);
+        if (cached != null)
+        {
+            return cached;
+        }
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getRidersMountainPointClassificationRank(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getTeamsClassificationRank(int raceId) throws IDNotRecognisedException {
+        TeamClassification cached = this.getCachedTeamClassificationWithoutLocking(raceId);
+        if (cached != null)
+        {
+            return cached.getTeams().clone();
+        }
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getTeamsClassificationRank(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public Duration[] getTeamClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+        TeamClassification cached = this.getCachedTeamClassificationWithoutLocking(raceId);
+        if (cached != null)
+        {
+            long[] times = cached.getTimesNanos();
+            Duration[] sortedTimes = new Duration[times.length];
+            for (int i=0; i<times.length; i++)
+            {
+                sortedTimes[i] = Duration.ofNanos(times[i]);
+            }
+            return sortedTimes;
+        }
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getTeamClassificationTimesInRace(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public long[] getTeamClassificationGapsInRace(int raceId) throws IDNotRecognisedException {
+        TeamClassification cached = this.getCachedTeamClassificationWithoutLocking(raceId);
+        if (cached != null)
+        {
+            return cached.getGapMillis().clone();
+        }
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getTeamClassificationGapsInRace(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getYoungRidersClassificationRank(int raceId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getYoungRidersClassificationRank(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public long[] getYoungRidersClassificationGapsInRace(int raceId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getYoungRidersClassificationGapsInRace(raceId);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public int[] getRidersAgeBandClassificationRank(int raceId, int minAge, int maxAge) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getRidersAgeBandClassificationRank(raceId, minAge, maxAge);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public long[] getAgeBandClassificationGapsInRace(int raceId, int minAge, int maxAge) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        int[] stripes = this.lockRaceStages(raceId);
+        try
+        {
+            return super.getAgeBandClassificationGapsInRace(raceId, minAge, maxAge);
+        }
+        finally
+        {
+            this.unlockStages(stripes);
+            this.lock.readLock().unlock();
+        }
+	}
+
+	@Override
+	public void setRaceScoringScheme(int raceId, ScoringScheme scoringScheme) throws IDNotRecognisedException {
+        this.lockWrite();
+        try
+        {
+            super.setRaceScoringScheme(raceId, scoringScheme);
+        }
+        finally
+        {
+            this.unlockWrite();
+        }
+	}
+
+	@Override
+	public ScoringScheme getRaceScoringScheme(int raceId) throws IDNotRecognisedException {
+        this.lock.readLock().lock();
+        try
+        {
+            return super.getRaceScoringScheme(raceId);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+	}
+}
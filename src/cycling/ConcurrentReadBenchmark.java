@@ -0,0 +1,248 @@
+package cycling;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how reads of a ConcurrentCyclingPortal scale with the number of
+ * reader threads. Run it on the machine whose core count matters:
+ * <pre>
+ *     java -cp bin cycling.ConcurrentReadBenchmark [maxThreads] [seconds]
+ * </pre>
+ * For 1, 2, 4, ... up to maxThreads readers (by default the number of
+ * available processors) it runs each workload for the given number of
+ * seconds (2 by default) and prints the reads per second, and the speedup
+ * over one reader:
+ * <ul>
+ * <li>cached: race classifications answered from the races' caches
+ *     (general, points, mountain points and team), which take no lock;</li>
+ * <li>cached+writer: the same, while another thread re-registers a result
+ *     in one of the races every millisecond, so that race's reads keep
+ *     falling back to the locks to refill its cache;</li>
+ * <li>locked: stage rankings, which take the portal's read lock and the
+ *     read lock of the stage's stripe.</li>
+ * </ul>
+ * Near-linear scaling needs as many free cores as readers; on fewer cores
+ * the readers only take turns.
+ */
+public final class ConcurrentReadBenchmark
+{
+    private static final int RACES = 4;
+    private static final int STAGES_PER_RACE = 5;
+    private static final int TEAMS = 20;
+    private static final int RIDERS = 2000;
+    private static final String[] WORKLOADS = {"cached", "cached+writer", "locked"};
+
+    private ConcurrentReadBenchmark()
+    {
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        ConcurrentCyclingPortal portal = new ConcurrentCyclingPortal();
+        int[] raceIds = new int[RACES];
+        int[] stageIds = new int[RACES * STAGES_PER_RACE];
+        int[] riderIds = new int[RIDERS];
+        build(portal, raceIds, stageIds, riderIds);
+
+        System.out.printf("%d races of %d stages, %d riders, %d available processors%n",
+            RACES, STAGES_PER_RACE, RIDERS, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-14s %8s %14s %8s%n", "workload", "threads", "reads/s", "speedup");
+        for (String workload : WORKLOADS)
+        {
+            double singleThreaded = 0;
+            for (int threads : threadCounts(maxThreads))
+            {
+                double readsPerSecond = run(portal, workload, threads, seconds, raceIds, stageIds, riderIds);
+                if (threads == 1)
+                {
+                    singleThreaded = readsPerSecond;
+                }
+                System.out.printf("%-14s %8d %14.0f %8.2f%n", workload, threads, readsPerSecond, readsPerSecond / singleThreaded);
+            }
+        }
+        System.out.printf("Classification cache hits: %d, misses: %d%n",
+            portal.getClassificationCacheHits(), portal.getClassificationCacheMisses());
+    }
+
+    private static ArrayList<Integer> threadCounts(int maxThreads)
+    {
+        // Powers of two below maxThreads, then maxThreads itself.
+        ArrayList<Integer> counts = new ArrayList<Integer>();
+        for (int threads=1; threads<maxThreads; threads*=2)
+        {
+            counts.add(threads);
+        }
+        counts.add(Math.max(1, maxThreads));
+        return counts;
+    }
+
+    private static void build(ConcurrentCyclingPortal portal, int[] raceIds, int[] stageIds, int[] riderIds)
+        throws Exception
+    {
+        Random random = new Random(22);
+        int[] teamIds = new int[TEAMS];
+        for (int i=0; i<TEAMS; i++)
+        {
+            teamIds[i] = portal.createTeam("Team" + i, "");
+        }
+        for (int i=0; i<RIDERS; i++)
+        {
+            riderIds[i] = portal.createRider(teamIds[i % TEAMS], "Rider" + i, 1980 + i % 20);
+        }
+
+        for (int race=0; race<RACES; race++)
+        {
+            raceIds[race] = portal.createRace("Race" + race, "");
+            for (int stage=0; stage<STAGES_PER_RACE; stage++)
+            {
+                int stageId = portal.addStageToRace(raceIds[race], "Race" + race + "Stage" + stage, "", 150,
+                    LocalDateTime.of(2024, 7, 1 + stage, 12, 0), StageType.FLAT);
+                portal.addIntermediateSprintToStage(stageId, 80);
+                portal.addCategorizedClimbToStage(stageId, 120.0, SegmentType.C2, 5.0, 4.0);
+                portal.concludeStagePreparation(stageId);
+                stageIds[race * STAGES_PER_RACE + stage] = stageId;
+
+                for (int riderId : riderIds)
+                {
+                    portal.registerRiderResultsInStage(stageId, riderId, finish(random));
+                }
+            }
+        }
+    }
+
+    private static LocalTime[] finish(Random random)
+    {
+        // One checkpoint per segment of the stage, in order, to the millisecond.
+        long sprint = 12 * 3_600_000_000_000L + random.nextInt(600_000) * 1_000_000L;
+        long climb = sprint + 3_600_000_000_000L + random.nextInt(600_000) * 1_000_000L;
+        return new LocalTime[]{LocalTime.ofNanoOfDay(sprint), LocalTime.ofNanoOfDay(climb)};
+    }
+
+    private static double run(ConcurrentCyclingPortal portal, String workload, int threads, int seconds,
+        int[] raceIds, int[] stageIds, int[] riderIds) throws Exception
+    {
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder reads = new LongAdder();
+        Throwable[] failure = new Throwable[1];
+        ArrayList<Thread> workers = new ArrayList<Thread>();
+
+        for (int t=0; t<threads; t++)
+        {
+            Random random = new Random(t);
+            workers.add(new Thread(() ->
+            {
+                try
+                {
+                    long count = 0;
+                    while (!stop.get())
+                    {
+                        if (workload.equals("locked"))
+                        {
+                            check(portal.getRidersRankInStage(stageIds[random.nextInt(stageIds.length)]).length == RIDERS);
+                        }
+                        else
+                        {
+                            readClassification(portal, raceIds[random.nextInt(raceIds.length)], random.nextInt(4));
+                        }
+                        count++;
+                    }
+                    reads.add(count);
+                }
+                catch (Throwable e)
+                {
+                    synchronized (failure)
+                    {
+                        failure[0] = e;
+                    }
+                }
+            }));
+        }
+        if (workload.equals("cached+writer"))
+        {
+            workers.add(new Thread(() ->
+            {
+                // Takes one result out of the first race and puts it back, over and over.
+                Random random = new Random(-1);
+                try
+                {
+                    while (!stop.get())
+                    {
+                        int stageId = stageIds[random.nextInt(STAGES_PER_RACE)];
+                        int riderId = riderIds[random.nextInt(riderIds.length)];
+                        LocalTime[] checkpoints = portal.getRiderResultsInStage(stageId, riderId);
+                        portal.deleteRiderResultsInStage(stageId, riderId);
+                        portal.registerRiderResultsInStage(stageId, riderId, checkpoints);
+                        Thread.sleep(1);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    synchronized (failure)
+                    {
+                        failure[0] = e;
+                    }
+                }
+            }));
+        }
+
+        // Fill the caches, and give the JIT a head start, before timing.
+        for (int i=0; i<1000; i++)
+        {
+            readClassification(portal, raceIds[i % raceIds.length], i % 4);
+        }
+        for (Thread worker : workers)
+        {
+            worker.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+        synchronized (failure)
+        {
+            if (failure[0] != null)
+            {
+                throw new IllegalStateException("A benchmark thread failed.", failure[0]);
+            }
+        }
+        return reads.sum() / (double)seconds;
+    }
+
+    private static void readClassification(ConcurrentCyclingPortal portal, int raceId, int which)
+        throws IDNotRecognisedException
+    {
+        switch (which)
+        {
+            case 0:
+                check(portal.getRidersGeneralClassificationRank(raceId).length == RIDERS);
+                break;
+            case 1:
+                check(portal.getRidersPointClassificationRank(raceId).length == RIDERS);
+                break;
+            case 2:
+                check(portal.getRidersMountainPointClassificationRank(raceId).length == RIDERS);
+                break;
+            default:
+                check(portal.getTeamsClassificationRank(raceId).length == TEAMS);
+                break;
+        }
+    }
+
+    private static void check(boolean condition)
+    {
+        if (!condition)
+        {
+            throw new IllegalStateException("A read returned the wrong number of entries.");
+        }
+    }
+}
@@ -8,15 +8,15 @@ import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.FileInputStream;
 import java.io.EOFException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.Collections;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map.Entry;
-import java.lang.IndexOutOfBoundsException;
-import java.lang.ArrayIndexOutOfBoundsException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * CyclingPortal is an implementor
@@ -31,50 +31,75 @@ public class CyclingPortal implements CyclingPortalInterface {
 	protected ArrayList<Rider> riders;
 	protected ArrayList<Team> teams;
     protected String outdir;
+    protected ResultStorage resultStorage;
+    protected IdAllocator ids; // Hands out this portal's IDs; saved with it
+
+    // ID indexes over the lists above, so lookups don't scan the lists.
+    // The lists are kept to preserve creation order for methods like getRaceIds().
+    protected IntObjectMap<Race> racesById;
+    protected IntObjectMap<Stage> stagesById;
+    protected IntObjectMap<Segment> segmentsById;
+    protected IntObjectMap<Rider> ridersById;
+    protected IntObjectMap<Team> teamsById;
+
+    // Name indexes, used for O(1) uniqueness checks and removeRaceByName.
+    protected HashMap<String, Integer> raceIdsByName;
+    protected HashMap<String, Integer> stageIdsByName;
+    protected HashMap<String, Integer> teamIdsByName;
+
+    // Bitmaps (indexed by rider ID) of the riders born in each year, keyed by the year.
+    // They are kept up to date as riders are created and removed, so there is at most one per year of birth in use.
+    protected transient HashMap<Integer, BitSet> ridersByBirthYear;
+
+    // Number of race classification reads answered from (hits) or added to (misses) the races' caches
+    protected LongAdder classificationCacheHits;
+    protected LongAdder classificationCacheMisses;
 
     // Static attributes
-    private static final HashMap<StageType, int[]> stagePointsMap = new HashMap<StageType, int[]>();
-    private static final HashMap<SegmentType, int[]> segmentPointsMap = new HashMap<SegmentType, int[]>();
-    static {
-        stagePointsMap.put(StageType.FLAT,
-        new int[]{50, 30, 20, 18, 16, 14, 12, 10, 8, 7, 6, 5, 4, 3, 2});
-        stagePointsMap.put(StageType.MEDIUM_MOUNTAIN,
-        new int[]{30, 25, 22, 19, 17, 15, 13, 11, 9, 7, 6, 5, 4, 3, 2});
-        stagePointsMap.put(StageType.HIGH_MOUNTAIN,
-        new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1});
-        stagePointsMap.put(StageType.TT,
-        new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1});
-
-        segmentPointsMap.put(SegmentType.SPRINT,
-        new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1});
-        segmentPointsMap.put(SegmentType.C4,
-        new int[]{1});
-        segmentPointsMap.put(SegmentType.C3,
-        new int[]{2, 1});
-        segmentPointsMap.put(SegmentType.C2,
-        new int[]{5, 3, 2, 1});
-        segmentPointsMap.put(SegmentType.C1,
-        new int[]{10, 8, 6, 4, 2, 1});
-        segmentPointsMap.put(SegmentType.HC,
-        new int[]{20, 15, 12, 10, 8, 6, 4, 2});
-    }
+    private static final long NANOS_PER_DAY = LocalTime.MAX.toNanoOfDay() + 1;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final int YOUNG_RIDER_MAX_AGE = 25;
 
-    // Constructor
+    // Constructors
     public CyclingPortal()
     {
+        this(ResultStorage.HEAP);
+    }
+
+    /**
+	 * Creates an empty portal whose stages keep their results in the given kind of storage.
+     * OFF_HEAP keeps results out of the garbage-collected heap, for events with very large fields.
+     *
+	 * @param resultStorage Where stage results are stored.
+	 */
+    public CyclingPortal(ResultStorage resultStorage)
+    {
+        this.resultStorage = resultStorage;
+        this.ids = new IdAllocator();
         this.races = new ArrayList<Race>();
         this.stages = new ArrayList<Stage>();
         this.segments = new ArrayList<Segment>();
         this.riders = new ArrayList<Rider>();
         this.teams = new ArrayList<Team>();
+        this.racesById = new IntObjectMap<Race>();
+        this.stagesById = new IntObjectMap<Stage>();
+        this.segmentsById = new IntObjectMap<Segment>();
+        this.ridersById = new IntObjectMap<Rider>();
+        this.teamsById = new IntObjectMap<Team>();
+        this.raceIdsByName = new HashMap<String, Integer>();
+        this.stageIdsByName = new HashMap<String, Integer>();
+        this.teamIdsByName = new HashMap<String, Integer>();
+        this.ridersByBirthYear = new HashMap<Integer, BitSet>();
+        this.classificationCacheHits = new LongAdder();
+        this.classificationCacheMisses = new LongAdder();
         outdir = System.getProperty("user.dir");
         outdir = outdir.substring(0, outdir.length() - 3); // Subtracts "\src\cycling"
         this.outdir = outdir + "\\res";
         System.out.println(this.outdir);
     }
 
-    // These methods iteratively search through the ArrayList attributes for the member
-    // with the matching ID.
+    // These methods look up the member with the matching ID in the ID indexes. The portal's own methods use
+    // the find methods; the public get methods are for callers outside the portal, and a subclass may lock them.
 
     /**
 	 * Returns the race object corresponding to the provided race ID.
@@ -84,20 +109,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 */
     public Race getRace(int raceId)
     {
-        // Finds the corresponding race and returns it if it exists.
-        // If it doesn't exist, null is returned.
-
-        Race race = null;
-        for (int i=0; i<this.races.size(); i++)
-        {
-            if (this.races.get(i).getId() == raceId)
-            {
-                race = this.races.get(i);
-                break;
-            }
-        }
-
-        return race;
+        return this.findRace(raceId);
     }
 
     /**
@@ -108,20 +120,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 */
     public Stage getStage(int stageId)
     {
-        // Finds the corresponding stage and returns it if it exists.
-        // If it doesn't exist, null is returned.
-
-        Stage stage = null;
-        for (int i=0; i<this.stages.size(); i++)
-        {
-            if (this.stages.get(i).getId() == stageId)
-            {
-                stage = this.stages.get(i);
-                break;
-            }
-        }
-
-        return stage;
+        return this.findStage(stageId);
     }
 
     /**
@@ -132,20 +131,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 */
     public Segment getSegment(int segmentId)
     {
-        // Finds the corresponding segment and returns it if it exists.
-        // If it doesn't exist, null is returned.
-
-        Segment segment = null;
-        for (int i=0; i<this.segments.size(); i++)
-        {
-            if (this.segments.get(i).getId() == segmentId)
-            {
-                segment = this.segments.get(i);
-                break;
-            }
-        }
-
-        return segment;
+        return this.findSegment(segmentId);
     }
 
     /**
@@ -156,20 +142,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 */
     public Team getTeam(int teamId)
     {
-        // Finds the corresponding team and returns it if it exists.
-        // If it doesn't exist, null is returned.
-
-        Team team = null;
-        for (int i=0; i<this.teams.size(); i++)
-        {
-            if (this.teams.get(i).getId() == teamId)
-            {
-                team = this.teams.get(i);
-                break;
-            }
-        }
-
-        return team;
+        return this.findTeam(teamId);
     }
 
     /**
@@ -179,65 +152,126 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 * @return The Rider object.
 	 */
     public Rider getRider(int riderId)
+    {
+        return this.findRider(riderId);
+    }
+
+    protected Race findRace(int raceId)
+    {
+        // Finds the corresponding race and returns it if it exists.
+        // If it doesn't exist, null is returned.
+
+        return this.racesById.get(raceId);
+    }
+
+    protected Stage findStage(int stageId)
+    {
+        // Finds the corresponding stage and returns it if it exists.
+        // If it doesn't exist, null is returned.
+
+        return this.stagesById.get(stageId);
+    }
+
+    protected Segment findSegment(int segmentId)
+    {
+        // Finds the corresponding segment and returns it if it exists.
+        // If it doesn't exist, null is returned.
+
+        return this.segmentsById.get(segmentId);
+    }
+
+    protected Team findTeam(int teamId)
+    {
+        // Finds the corresponding team and returns it if it exists.
+        // If it doesn't exist, null is returned.
+
+        return this.teamsById.get(teamId);
+    }
+
+    protected Rider findRider(int riderId)
     {
         // Finds the corresponding rider and returns it if it exists.
         // If it doesn't exist, null is returned.
 
-        Rider rider = null;
-        for (int i=0; i<this.riders.size(); i++)
+        return this.ridersById.get(riderId);
+    }
+
+    /**
+	 * Removes a race, along with all of its stages and segments.
+     *
+	 * @param race The race to be removed.
+	 */
+    public void deleteRace(Race race)
+    {
+        // Cascade through all stages and segments connected to the race by ID.
+
+        // Find the stages linked to this Race
+        for (int stageId : race.getStages())
         {
-            if (this.riders.get(i).getId() == riderId)
+            Stage stage = this.findStage(stageId);
+
+            // Find the segments linked to these stages
+            for (int segmentId : stage.getSegments())
             {
-                rider = this.riders.get(i);
-                break;
+                // Delete the segments
+                this.segments.remove(this.findSegment(segmentId));
+                this.segmentsById.remove(segmentId);
             }
+            // Delete the stages
+            this.stages.remove(stage);
+            this.stagesById.remove(stageId);
+            this.stageIdsByName.remove(stage.getName());
         }
-
-        return rider;
+        // Delete the Race.
+        this.races.remove(race);
+        this.racesById.remove(race.getId());
+        this.raceIdsByName.remove(race.getName());
     }
 
     /**
-	 * Returns the HashMap relating Riders to their total race time.
+	 * Returns the map relating Riders to their total race time, in nanoseconds. Totals are not
+     * wrapped at midnight, so they stay correct for races lasting days or weeks.
      *
 	 * @param raceId The ID of the race being queried.
-     * @param useAdjusted Whether or not the HashMap values should be adjusted time or not.
-	 * @return The HashMap.
+     * @param useAdjusted Whether or not the map values should be adjusted time or not.
+	 * @return The map.
 	 */
-    public HashMap<Integer, LocalTime> getRiderToTotalRaceTimeMap(int raceId, boolean useAdjusted) throws IDNotRecognisedException
+    public IntLongMap getRiderToTotalRaceTimeMap(int raceId, boolean useAdjusted) throws IDNotRecognisedException
     {
-        HashMap<Integer, LocalTime> riderToTime = new HashMap<>();
+        IntLongMap riderToTime = new IntLongMap();
+        Race race = this.findRace(raceId);
+        if (race == null)
+        {
+            throw new IDNotRecognisedException("Race ID doesn't exist.");
+        }
 
-        for (Stage stage : this.stages)
+        if (useAdjusted)
         {
-            if (stage.getRaceId() == raceId)
+            // The race keeps running totals of the adjusted times, so only the stages that changed are read.
+            IntLongMap adjustedTotals = this.getAdjustedTotals(race);
+            for (int riderId : adjustedTotals.keys())
             {
-                HashMap<Integer, ArrayList<LocalTime>> riderResultsMap = stage.getRiderResults();
-                for (int riderId : riderResultsMap.keySet())
+                if (this.findRider(riderId) != null)
                 {
-                    Rider rider = this.getRider(riderId);
-                    if (rider != null)
-                    {
-                        LocalTime stageTime;
-                        if (useAdjusted)
-                        {
-                            stageTime = this.getRiderAdjustedElapsedTimeInStage(stage.getId(), riderId);
-                        }
-                        else
-                        {
-                            LocalTime[] riderResults = this.getRiderResultsInStage(stage.getId(), riderId);
-                            stageTime = riderResults[riderResults.length - 1];
-                        }
-                        LocalTime prevTime = riderToTime.get(riderId);
-
-                        if (prevTime == null)
-                        {
-                            riderToTime.put(riderId, stageTime);
-                        }
-                        else
-                        {
-                            riderToTime.put(riderId, prevTime.plusHours(stageTime.getHour()).plusMinutes(stageTime.getMinute()).plusSeconds(stageTime.getSecond()).plusNanos(stageTime.getNano()));
-                        }
-                    }
+                    riderToTime.put(riderId, adjustedTotals.getOrDefault(riderId, 0));
+                }
+            }
+            return riderToTime;
+        }
+
+        for (int stageId : race.getStages())
+        {
+            // Read the stage's cached ranking rather than querying each rider's result.
+            Stage stage = this.findStage(stageId);
+            int[] rankedRiders = stage.getRanking();
+            long[] stageTimes = stage.getRankedFinishes();
+            for (int rank=0; rank<rankedRiders.length; rank++)
+            {
+                int riderId = rankedRiders[rank];
+                Rider rider = this.findRider(riderId);
+                if (rider != null)
+                {
+                    riderToTime.addTo(riderId, stageTimes[rank]);
                 }
             }
         }
@@ -246,43 +280,341 @@ public class CyclingPortal implements CyclingPortalInterface {
     }
 
     /**
-	 * Returns an array of riders sorted by their race time.
+	 * Brings the running totals of a race up to date with its stages and returns them.
      *
-	 * @param riderToTime A rider to race time HashMap.
-	 * @return The array of riders.
+	 * @param race The race being queried.
+	 * @return The map of rider IDs to total adjusted time in nanoseconds.
+     *         It belongs to the race and must not be changed.
 	 */
-    public int[] sortRidersByTotalRaceTime(HashMap<Integer, LocalTime> riderToTime)
+    private IntLongMap getAdjustedTotals(Race race)
     {
-        // Make an ArrayList containing all of the finishing times; sort it
-        ArrayList<LocalTime> sortedFinishes = new ArrayList<LocalTime>(riderToTime.values());
-        Collections.sort(sortedFinishes);
+        ArrayList<Stage> raceStages = new ArrayList<Stage>();
+        for (int stageId : race.getStages())
+        {
+            raceStages.add(this.findStage(stageId));
+        }
+        return race.getAdjustedTotals(raceStages);
+    }
 
-        // Make an array of the same size as sortedFinishes to match the return type
-        // This will contain the Riders IDs sorted by rank.
-        // Create a variable to track the position in the array to ensure an index error doesn't occur.
-        int[] sortedRiders = new int[sortedFinishes.size()];
-        int sortedRidersIndex = 0;
+    /**
+	 * Returns the map relating teams to their team classification time in a race: the sum of the adjusted
+     * times of the team's best three riders in each stage with results. A team is only classified if at
+     * least three of its riders finished every such stage; stages without results are not yet run, so are skipped.
+     *
+	 * @param race The race being queried.
+	 * @return The map of team IDs to total time in nanoseconds.
+	 */
+    private IntLongMap getTeamToTotalRaceTimeMap(Race race)
+    {
+        IntLongMap teamToTime = new IntLongMap();
+        IntLongMap teamToStagesCounted = new IntLongMap();
+        int stagesRun = 0;
 
-        // Iterate over the sorted finishing times...
-        for (LocalTime finish : sortedFinishes)
+        for (int stageId : race.getStages())
         {
-            // Iterate a second time, over the key set of the list of rider IDs
-            for (int key : riderToTime.keySet())
+            // The stage's ranking is in order of adjusted time, so a team's first three riders in it are its best three.
+            Stage stage = this.findStage(stageId);
+            int[] rankedRiders = stage.getRanking();
+            long[] adjustedTimes = stage.getRankedAdjustedTimes();
+            if (rankedRiders.length == 0)
+            {
+                continue;
+            }
+            stagesRun++;
+
+            IntLongMap teamToFinishers = new IntLongMap();
+            for (int rank=0; rank<rankedRiders.length; rank++)
             {
-                // Check if the rider has the same time as the sorted time
-                // If they do, the rider ID will be matched to the same index
-                // belonging to the finishing time (so it will be indexed by
-                // its rank).
-                if (finish.equals(riderToTime.get(key)) && sortedRidersIndex < sortedRiders.length)
+                Rider rider = this.findRider(rankedRiders[rank]);
+                if (rider != null)
                 {
-                    // Assign the rider ID (key) to the correct index, increment the index for the
-                    // next pass.
-                    sortedRiders[sortedRidersIndex] = key;
-                    sortedRidersIndex++;
+                    int teamId = rider.getTeamId();
+                    long finishers = teamToFinishers.addTo(teamId, 1);
+                    if (finishers <= 3)
+                    {
+                        teamToTime.addTo(teamId, adjustedTimes[rank]);
+                    }
+                    if (finishers == 3)
+                    {
+                        teamToStagesCounted.addTo(teamId, 1);
+                    }
                 }
             }
         }
 
+        // Drop the teams that had fewer than three finishers in some stage.
+        for (int teamId : teamToTime.keys())
+        {
+            if (teamToStagesCounted.getOrDefault(teamId, 0) != stagesRun)
+            {
+                teamToTime.remove(teamId);
+            }
+        }
+        return teamToTime;
+    }
+
+    /**
+	 * Returns the year a race is held in: the year of its earliest stage start.
+     *
+	 * @param race The race being queried.
+	 * @return The year, or -1 if the race has no stages.
+	 */
+    private int getRaceYear(Race race)
+    {
+        LocalDateTime earliestStart = null;
+        for (int stageId : race.getStages())
+        {
+            LocalDateTime startTime = this.findStage(stageId).getStartTime();
+            if (earliestStart == null || startTime.isBefore(earliestStart))
+            {
+                earliestStart = startTime;
+            }
+        }
+        return earliestStart == null ? -1 : earliestStart.getYear();
+    }
+
+    /**
+	 * Returns a bitmap of the riders born between two years: the union of the bitmaps of the years of
+     * birth in range.
+     *
+	 * @param fromYear The first year of birth included.
+	 * @param toYear The last year of birth included.
+	 * @return The bitmap, with the bit of each matching rider's ID set.
+	 */
+    private BitSet getRidersBornBetween(int fromYear, int toYear)
+    {
+        // Only years some rider was born in have a bitmap, so this is bounded by those years, not by the range.
+        BitSet riderBits = new BitSet();
+        for (Entry<Integer, BitSet> entry : this.ridersByBirthYear.entrySet())
+        {
+            if (entry.getKey() >= fromYear && entry.getKey() <= toYear)
+            {
+                riderBits.or(entry.getValue());
+            }
+        }
+        return riderBits;
+    }
+
+    /**
+	 * Adds a rider to the bitmap of the riders born in their year.
+     *
+	 * @param rider The rider.
+	 */
+    private void addRiderBirthYear(Rider rider)
+    {
+        this.ridersByBirthYear.computeIfAbsent(rider.getYearOfBirth(), year -> new BitSet()).set(rider.getId());
+    }
+
+    /**
+	 * Removes a rider from the bitmap of the riders born in their year, dropping the bitmap once it is empty.
+     *
+	 * @param rider The rider.
+	 */
+    private void removeRiderBirthYear(Rider rider)
+    {
+        BitSet riderBits = this.ridersByBirthYear.get(rider.getYearOfBirth());
+        if (riderBits != null)
+        {
+            riderBits.clear(rider.getId());
+            if (riderBits.isEmpty())
+            {
+                this.ridersByBirthYear.remove(rider.getYearOfBirth());
+            }
+        }
+    }
+
+    /**
+	 * Returns the positions in the general classification of a race of the riders of a given age in the race's
+     * year (the year of the race minus the year of birth). The classification is filtered rather than recalculated,
+     * and is up to date once this returns.
+     *
+	 * @param race The race being queried.
+	 * @param minAge The youngest age included.
+	 * @param maxAge The oldest age included.
+	 * @return The indexes into the race's classification of the matching riders, in ascending order.
+	 * @throws IllegalArgumentException If either age is negative, or minAge is greater than maxAge.
+	 */
+    private int[] getAgeFilteredGeneralClassificationRanks(Race race, int minAge, int maxAge)
+    {
+        if (minAge < 0 || minAge > maxAge)
+        {
+            throw new IllegalArgumentException("Ages must be at least 0, with minAge at most maxAge.");
+        }
+
+        this.getAdjustedTotals(race);
+        int raceYear = this.getRaceYear(race);
+        if (raceYear == -1)
+        {
+            // No stages, so no results.
+            return new int[0];
+        }
+
+        int[] classification = race.getClassification();
+        BitSet riderBits = this.getRidersBornBetween(raceYear - maxAge, raceYear - minAge);
+        int[] ranks = new int[classification.length];
+        int count = 0;
+        for (int rank=0; rank<classification.length; rank++)
+        {
+            if (riderBits.get(classification[rank]))
+            {
+                ranks[count++] = rank;
+            }
+        }
+        return Arrays.copyOf(ranks, count);
+    }
+
+    /**
+	 * Returns the general classification of a race, keeping only the riders of a given age in the race's year.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @param minAge The youngest age included.
+	 * @param maxAge The oldest age included.
+	 * @return The ranked list of rider IDs, in the order of getRidersGeneralClassificationRank.
+	 */
+    private int[] getAgeFilteredGeneralClassification(int raceId, int minAge, int maxAge) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+        if (race == null)
+        {
+            throw new IDNotRecognisedException("Race ID doesn't exist.");
+        }
+
+        int[] ranks = this.getAgeFilteredGeneralClassificationRanks(race, minAge, maxAge);
+        int[] classification = race.getClassification();
+        int[] riders = new int[ranks.length];
+        for (int i=0; i<ranks.length; i++)
+        {
+            riders[i] = classification[ranks[i]];
+        }
+        return riders;
+    }
+
+    /**
+	 * Returns the gap of each rider of a given age in the race's year to the best placed of them, in the
+     * general classification of a race.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @param minAge The youngest age included.
+	 * @param maxAge The oldest age included.
+	 * @return The gaps in milliseconds, in the order of getAgeFilteredGeneralClassification (so the first is 0).
+	 */
+    private long[] getAgeFilteredGeneralClassificationGaps(int raceId, int minAge, int maxAge) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+        if (race == null)
+        {
+            throw new IDNotRecognisedException("Race ID doesn't exist.");
+        }
+
+        // The gaps are to the leader of the filtered view, not of the whole classification.
+        int[] ranks = this.getAgeFilteredGeneralClassificationRanks(race, minAge, maxAge);
+        long[] times = race.getClassificationTimes();
+        long[] gapMillis = new long[ranks.length];
+        for (int i=0; i<ranks.length; i++)
+        {
+            gapMillis[i] = (times[ranks[i]] - times[ranks[0]]) / NANOS_PER_MILLI;
+        }
+        return gapMillis;
+    }
+
+    /**
+	 * Returns a copy of a classification of a race, from the race's cache if nothing in the race has changed
+     * since it was last worked out.
+     *
+	 * @param race The race being queried.
+	 * @param classification The classification.
+	 * @return A copy of the classification, which the caller may change.
+	 */
+    private int[] getCachedRaceClassification(Race race, RaceClassification classification) throws IDNotRecognisedException
+    {
+        int[] cached = race.getCachedClassification(classification);
+        if (cached != null)
+        {
+            this.classificationCacheHits.increment();
+            return cached.clone();
+        }
+
+        this.classificationCacheMisses.increment();
+        switch (classification)
+        {
+            case GENERAL_CLASSIFICATION_RANK:
+                this.getAdjustedTotals(race);
+                cached = race.getClassification();
+                break;
+            case POINTS:
+                cached = this.getAnyTypeOfRidersPointsInRace(race.getId(), "Standard");
+                break;
+            case MOUNTAIN_POINTS:
+                cached = this.getAnyTypeOfRidersPointsInRace(race.getId(), "Mountain");
+                break;
+            case POINT_CLASSIFICATION_RANK:
+                cached = this.getAnyTypeOfRidersPointClassificationRank(race.getId(), "Standard");
+                break;
+            case MOUNTAIN_POINT_CLASSIFICATION_RANK:
+                cached = this.getAnyTypeOfRidersPointClassificationRank(race.getId(), "Mountain");
+                break;
+            default:
+                // A new classification must be given its own case, rather than being cached as another.
+                throw new IllegalArgumentException("Unknown race classification: " + classification);
+        }
+        race.cacheClassification(classification, cached);
+        return cached.clone();
+    }
+
+    /**
+	 * Returns the team classification of a race (see getTeamToTotalRaceTimeMap), from the race's cache if
+     * nothing in the race has changed since it was last worked out.
+     *
+	 * @param race The race being queried.
+	 * @return The team classification, whose arrays the caller must copy before changing or handing out.
+	 */
+    private TeamClassification getTeamClassification(Race race)
+    {
+        TeamClassification cached = race.getCachedTeamClassification();
+        if (cached != null)
+        {
+            this.classificationCacheHits.increment();
+            return cached;
+        }
+
+        this.classificationCacheMisses.increment();
+        IntLongMap teamToTime = this.getTeamToTotalRaceTimeMap(race);
+        int[] teams = teamToTime.keys();
+        long[] times = new long[teams.length];
+        for (int i=0; i<teams.length; i++)
+        {
+            times[i] = teamToTime.getOrDefault(teams[i], 0);
+        }
+        // Teams are ranked the same way as riders: by time, then by ID.
+        Ranking.sort(times, teams, teams.length);
+
+        long[] gapMillis = new long[teams.length];
+        for (int i=0; i<teams.length; i++)
+        {
+            gapMillis[i] = (times[i] - times[0]) / NANOS_PER_MILLI;
+        }
+        cached = new TeamClassification(teams, times, gapMillis);
+        race.cacheTeamClassification(cached);
+        return cached;
+    }
+
+    /**
+	 * Returns an array of riders sorted by their race time.
+     *
+	 * @param riderToTime A rider to race time map.
+	 * @return The array of riders.
+	 */
+    public int[] sortRidersByTotalRaceTime(IntLongMap riderToTime)
+    {
+        // Pair each rider with their time, then sort the pairs (ties are broken by rider ID).
+        int[] sortedRiders = riderToTime.keys();
+        long[] sortedTimes = new long[sortedRiders.length];
+        for (int i=0; i<sortedRiders.length; i++)
+        {
+            sortedTimes[i] = riderToTime.getOrDefault(sortedRiders[i], 0);
+        }
+        Ranking.sort(sortedTimes, sortedRiders, sortedRiders.length);
+
         return sortedRiders;
     }
 
@@ -295,34 +627,37 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 */
     public int[] getAnyTypeOfRidersPointsInRace(int raceId, String type) throws IDNotRecognisedException
     {
-        HashMap<Integer, LocalTime> riderToTime = this.getRiderToTotalRaceTimeMap(raceId, false);
+        IntLongMap riderToTime = this.getRiderToTotalRaceTimeMap(raceId, false);
         int[] sortedRiders = this.sortRidersByTotalRaceTime(riderToTime);
         int[] pointsSortedByRiderRank = new int[sortedRiders.length];
-        for (Stage stage : this.stages)
+
+        // Index of each rider in sortedRiders
+        IntLongMap riderToRaceRank = new IntLongMap(sortedRiders.length);
+        for (int i=0; i<sortedRiders.length; i++)
+        {
+            riderToRaceRank.put(sortedRiders[i], i);
+        }
+
+        for (int stageId : this.findRace(raceId).getStages())
         {
-            int[] sortedRidersOfStage = this.getRidersRankInStage(stage.getId());
+            // Calculate the stage's points once; they are in the order of the stage's cached ranking.
+            int[] sortedRidersOfStage = this.findStage(stageId).getRanking();
+            int[] pointsOfStage = new int[sortedRidersOfStage.length];
+            if (type == "Mountain")
+            {
+                pointsOfStage = this.getRidersMountainPointsInStage(stageId);
+            }
+            else if (type == "Standard")
+            {
+                pointsOfStage = this.getRidersPointsInStage(stageId);
+            }
 
-            if (stage.getRaceId() == raceId)
+            for (int i=0; i<sortedRidersOfStage.length; i++)
             {
-                HashMap<Integer, ArrayList<LocalTime>> riderResults = stage.getRiderResults();
-                for (int key : riderResults.keySet())
+                int keyIndexInSortedRiders = (int)riderToRaceRank.getOrDefault(sortedRidersOfStage[i], -1);
+                if (keyIndexInSortedRiders != -1)
                 {
-                    int keyIndexInSortedRiders = this.intLinearSearch(sortedRiders, key);
-                    if (keyIndexInSortedRiders != -1)
-                    {
-                        int keyIndexInStageRank = this.intLinearSearch(sortedRidersOfStage, key);
-                        if (keyIndexInStageRank != -1)
-                        {
-                            if (type == "Mountain")
-                            {
-                                pointsSortedByRiderRank[keyIndexInSortedRiders] += this.getRidersMountainPointsInStage(stage.getId())[keyIndexInStageRank];
-                            }
-                            else if (type == "Standard")
-                            {
-                                pointsSortedByRiderRank[keyIndexInSortedRiders] += this.getRidersPointsInStage(stage.getId())[keyIndexInStageRank];
-                            }
-                        }
-                    }
+                    pointsSortedByRiderRank[keyIndexInSortedRiders] += pointsOfStage[i];
                 }
             }
         }
@@ -338,56 +673,35 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 */
     public int[] getAnyTypeOfRidersPointClassificationRank(int raceId, String type) throws IDNotRecognisedException
     {
-        HashMap<Integer, Integer> riderToPoints = new HashMap<>();
-        for (Stage stage : this.stages)
+        IntLongMap riderToPoints = new IntLongMap();
+        for (int stageId : this.findRace(raceId).getStages())
         {
-            if (stage.getRaceId() == raceId)
-            {
-                int[] sortedRidersInStage = this.getRidersRankInStage(stage.getId());
-                int[] pointsSortedByRiderRankInStage = new int[sortedRidersInStage.length];
-
-                if (type == "Mountain")
-                {
-                    pointsSortedByRiderRankInStage = this.getRidersMountainPointsInStage(stage.getId());
-                }
-                else if (type == "Standard")
-                {
-                    pointsSortedByRiderRankInStage = this.getRidersPointsInStage(stage.getId());
-                }
+            int[] sortedRidersInStage = this.findStage(stageId).getRanking();
+            int[] pointsSortedByRiderRankInStage = new int[sortedRidersInStage.length];
 
-                for (int i=0; i<sortedRidersInStage.length; i++)
-                {
-                    Integer prevPoints = riderToPoints.get(sortedRidersInStage[i]);
-                    if (prevPoints != null)
-                    {
-                        riderToPoints.put(sortedRidersInStage[i], prevPoints + pointsSortedByRiderRankInStage[i]);
-                    }
-                    else
-                    {
-                        riderToPoints.put(sortedRidersInStage[i], (int)pointsSortedByRiderRankInStage[i]);
-                    }
-                }
+            if (type == "Mountain")
+            {
+                pointsSortedByRiderRankInStage = this.getRidersMountainPointsInStage(stageId);
+            }
+            else if (type == "Standard")
+            {
+                pointsSortedByRiderRankInStage = this.getRidersPointsInStage(stageId);
             }
-        }
 
-        ArrayList<Integer> riders = new ArrayList<>();
-        ArrayList<Integer> points = new ArrayList<>();
-        for (int key : riderToPoints.keySet())
-        {
-            riders.add(key);
-        }
-        for (int value : riderToPoints.values())
-        {
-            points.add(value);
+            for (int i=0; i<sortedRidersInStage.length; i++)
+            {
+                riderToPoints.addTo(sortedRidersInStage[i], pointsSortedByRiderRankInStage[i]);
+            }
         }
 
-        ArrayList<Integer> sortedPoints = points;
-        Collections.sort(sortedPoints);
-        int[] ridersSortedByPoints = new int[sortedPoints.size()];
-        for (int i=0; i<sortedPoints.size(); i++)
+        // Rank by descending points: the points are negated so the ranking sort puts the most first.
+        int[] ridersSortedByPoints = riderToPoints.keys();
+        long[] negatedPoints = new long[ridersSortedByPoints.length];
+        for (int i=0; i<ridersSortedByPoints.length; i++)
         {
-            ridersSortedByPoints[i] = riders.get(points.indexOf(sortedPoints.get(i)));
+            negatedPoints[i] = -riderToPoints.getOrDefault(ridersSortedByPoints[i], 0);
         }
+        Ranking.sort(negatedPoints, ridersSortedByPoints, ridersSortedByPoints.length);
         return ridersSortedByPoints;
     }
 
@@ -410,6 +724,36 @@ public class CyclingPortal implements CyclingPortalInterface {
         return -1;
     }
 
+    /**
+	 * Adds up the points each rider scored in the segments of a stage, using each segment's
+     * order of passage, which the stage keeps until its results change.
+     *
+	 * @param stage The stage being queried.
+	 * @param sprints Whether to count the intermediate sprints (true) or the categorised climbs (false).
+	 * @return The points of each rider, in the order of the stage's ranking.
+	 */
+    private int[] getSegmentPointsInStage(Stage stage, boolean sprints)
+    {
+        ScoringScheme scoringScheme = this.findRace(stage.getRaceId()).getScoringScheme();
+        int[] points = new int[stage.getRanking().length];
+        ArrayList<Integer> segments = stage.getSegments();
+        for (int i=0; i<segments.size(); i++)
+        {
+            Segment segment = this.findSegment(segments.get(i));
+            if (segment != null && (segment.getType() == SegmentType.SPRINT) == sprints)
+            {
+                // Segment i is timed by checkpoint i; only the first few riders through it score.
+                int[] passageOrder = stage.getPassageOrder(i);
+                int scorers = Math.min(scoringScheme.getSegmentScorers(segment.getType()), passageOrder.length);
+                for (int k=0; k<scorers; k++)
+                {
+                    points[passageOrder[k]] += scoringScheme.getSegmentPoints(segment.getType(), k);
+                }
+            }
+        }
+        return points;
+    }
+
     // Pre-existing Methods
 	@Override
 	public int[] getRaceIds() {
@@ -437,18 +781,17 @@ public class CyclingPortal implements CyclingPortalInterface {
                 }
 			}
 
-			for (int i=0; i<this.races.size(); i++)
+			if (this.raceIdsByName.containsKey(name))
 			{
-				if (this.races.get(i).getName() == name)
-				{
-                    // The name has already been taken.
-					throw new IllegalNameException("This race name is already taken.");
-                }
+                // The name has already been taken.
+				throw new IllegalNameException("This race name is already taken.");
 			}
 
             // The name is valid; create the Race.
-			Race race = new Race(name, description);
+			Race race = new Race(this.ids.nextRaceId(), name, description);
             this.races.add(race);
+            this.racesById.put(race.getId(), race);
+            this.raceIdsByName.put(name, race.getId());
             return race.getId();
 		}
 		else
@@ -461,7 +804,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	@Override
 	public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
         // Displays all the relevant details of a race, formatted.
-        Race race = this.getRace(raceId);
+        Race race = this.findRace(raceId);
 
         // Need to deal with the fact that getRace returns null if no match is found.
         if (race == null)
@@ -471,18 +814,13 @@ public class CyclingPortal implements CyclingPortalInterface {
         else
         {
             // Calculate the number of stages and total length of the race.
-            int numberOfStages = 0;
+            int numberOfStages = race.getStages().size();
             double totalLength = 0.0;
-            for (int i=0; i<this.stages.size(); i++)
+            for (int stageId : race.getStages())
             {
-                Stage stage = this.stages.get(i);
-                if (stage.getRaceId() == raceId)
-                {
-                    numberOfStages++;
-                    totalLength += stage.getLength();
-                }
-                assert numberOfStages <= this.stages.size();
+                totalLength += this.findStage(stageId).getLength();
             }
+            assert numberOfStages <= this.stages.size();
 
             // Returns the found details in the form of a formatted string.
             return String.format("Race ID: %d\nName: %s\nDescription: %s\nNumber of Stages: %d\nLength: %fkm",
@@ -494,7 +832,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	public void removeRaceById(int raceId) throws IDNotRecognisedException {
         // Removes a race by ID or raises an exception.
 
-        Race race = this.getRace(raceId);
+        Race race = this.findRace(raceId);
 
         // Need to deal with the fact that getRace returns null if no match is found.
         if (race == null)
@@ -503,39 +841,14 @@ public class CyclingPortal implements CyclingPortalInterface {
         }
         else
         {
-            // Cascade through all stages and segments connected to the race by ID.
-
-            // Find the stages linked to this Race
-            ArrayList<Stage> stages = new ArrayList<>(this.stages);
-            ArrayList<Segment> segments = new ArrayList<>(this.segments);
-
-            // Find the stages linked to this Race
-            for (Stage stage : stages)
-            {
-                if (stage.getRaceId() == race.getId())
-                {
-                    // Find the segments linked to these stages
-                    for (Segment segment : segments)
-                    {
-                        if (segment.getStageId() == stage.getId())
-                        {
-                            // Delete the segments
-                            this.segments.remove(segment);
-                        }
-                    }
-                    // Delete the stages
-                    this.stages.remove(stage);
-                }
-            }
-            // Delete the Race.
-            this.races.remove(race);
+            this.deleteRace(race);
         }
 	}
 
 	@Override
 	public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
         // Returns the number of stages in the race provided, or raises an exception.
-        Race race = this.getRace(raceId);
+        Race race = this.findRace(raceId);
 
         // Need to deal with the fact that getRace returns null if no match is found.
         if (race == null)
@@ -544,17 +857,8 @@ public class CyclingPortal implements CyclingPortalInterface {
         }
         else
         {
-            // Iteratively search for stages belonging to the race...
-            // ... and increment numberOfStages whenever one is found
-            int numberOfStages = 0;
-            for (int i=0; i<this.stages.size(); i++)
-            {
-                if (this.stages.get(i).getRaceId() == raceId)
-                {
-                    numberOfStages++;
-                }
-            }
-            return numberOfStages;
+            // The race keeps track of its own stages.
+            return race.getStages().size();
         }
 	}
 
@@ -565,19 +869,9 @@ public class CyclingPortal implements CyclingPortalInterface {
 
         // Adds a stage to the given race, and either returns the ID of the stage or raises an exception.
 
-        boolean validRaceId = false;
-        boolean validName = true;
-
         // Check to see if the race ID is valid
-        for (int i=0; i<this.races.size(); i++)
-        {
-            if (raceId == this.races.get(i).getId())
-            {
-                validRaceId = true;
-            }
-        }
-
-        if (!validRaceId)
+        Race race = this.findRace(raceId);
+        if (race == null)
         {
             throw new IDNotRecognisedException("Race ID doesn't exist.");
         }
@@ -585,15 +879,7 @@ public class CyclingPortal implements CyclingPortalInterface {
         else
         {
             // Check to see if the name isn't valid
-            for (int i=0; i<this.stages.size(); i++)
-            {
-                if (stageName == this.stages.get(i).getName())
-                {
-                    validName = false;
-                }
-            }
-
-            if (!validName)
+            if (this.stageIdsByName.containsKey(stageName))
             {
                 throw new IllegalNameException("Stage name already exists.");
             }
@@ -615,8 +901,12 @@ public class CyclingPortal implements CyclingPortalInterface {
                 }
 
                 // All checks passed if reaches here.
-                Stage stage = new Stage(raceId, stageName, description, length, startTime, type, StageState.PREPARING);
+                Stage stage = new Stage(this.ids.nextStageId(), raceId, stageName, description, length, startTime, type,
+                StageState.PREPARING, this.resultStorage);
                 this.stages.add(stage);
+                this.stagesById.put(stage.getId(), stage);
+                this.stageIdsByName.put(stageName, stage.getId());
+                race.addStage(stage.getId());
                 return stage.getId();
             }
         }
@@ -624,24 +914,16 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
-        // Iteratively checks for all stages belonging to a certain race and returns an array containing their IDs,
-        // or an empty array if an invalid raceID is provided.
-        Race race = this.getRace(raceId);
+        // Returns an array containing the IDs of all stages belonging to a certain race,
+        // or throws an exception if an invalid raceID is provided.
+        Race race = this.findRace(raceId);
         if (race == null)
         {
             throw new IDNotRecognisedException("Race ID doesn't exist.");
         }
         else
         {
-            ArrayList<Integer> raceStages = new ArrayList<>();
-            for (int i=0; i<this.stages.size(); i++)
-            {
-                if (this.stages.get(i).getRaceId() == raceId)
-                {
-                    raceStages.add(this.stages.get(i).getId());
-                }
-            }
-            assert raceStages.size() == this.getNumberOfStages(raceId);
+            ArrayList<Integer> raceStages = race.getStages();
             int[] raceStagesArray = new int[raceStages.size()];
             for (int i=0; i<raceStages.size(); i++)
             {
@@ -654,7 +936,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	@Override
 	public double getStageLength(int stageId) throws IDNotRecognisedException {
         // Returns the length of a stage, or 0 if the stage ID provided doesn't exist.
-        Stage stage = this.getStage(stageId);
+        Stage stage = this.findStage(stageId);
 
         // Need to deal with the fact that stage can be null if it wasn't found in getStage.
         if (stage == null)
@@ -669,7 +951,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public void removeStageById(int stageId) throws IDNotRecognisedException {
-		Stage stage = this.getStage(stageId);
+		Stage stage = this.findStage(stageId);
 
         // Need to deal with the fact that stage can be null if it wasn't found in getStage.
         if (stage == null)
@@ -681,16 +963,17 @@ public class CyclingPortal implements CyclingPortalInterface {
             // Cascade through all segments connected to the stage by ID.
 
             // Find the segments
-            for (Segment segment : this.segments)
+            for (int segmentId : stage.getSegments())
             {
-                if (segment.getStageId() == stageId)
-                {
-                    // Remove the segments
-                    this.segments.remove(segment);
-                }
+                // Remove the segments
+                this.segments.remove(this.findSegment(segmentId));
+                this.segmentsById.remove(segmentId);
             }
             // Remove the stage.
             this.stages.remove(stage);
+            this.stagesById.remove(stageId);
+            this.stageIdsByName.remove(stage.getName());
+            this.findRace(stage.getRaceId()).removeStage(stageId);
         }
 	}
 
@@ -699,7 +982,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 			Double length) throws IDNotRecognisedException, InvalidLocationException, InvalidStageStateException,
 			InvalidStageTypeException {
 
-        Stage stage = this.getStage(stageId);
+        Stage stage = this.findStage(stageId);
 
         // Need to deal with the fact that stage can be null if not found in getStage.
         if (stage == null)
@@ -723,8 +1006,11 @@ public class CyclingPortal implements CyclingPortalInterface {
                 throw new InvalidStageTypeException("Time-trial stages can't contain any segments.");
             }
 
-            Segment segment = new Segment(stageId, location, type, averageGradient, length);
+            Segment segment = new Segment(this.ids.nextSegmentId(), stageId, location, type, averageGradient, length);
             this.segments.add(segment);
+            this.segmentsById.put(segment.getId(), segment);
+            stage.addSegment(segment.getId());
+            this.findRace(stage.getRaceId()).incrementVersion();
             return segment.getId();
         }
 	}
@@ -734,7 +1020,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 			InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
 		// Adds a segment without length or averageGradient attributes (sets them to 0), if the necessary
         // checks succeed. Returns the id of the segment or throws an error.
-        Stage stage = this.getStage(stageId);
+        Stage stage = this.findStage(stageId);
         if (stage == null)
         {
             throw new IDNotRecognisedException("Stage ID doesn't exist.");
@@ -756,8 +1042,11 @@ public class CyclingPortal implements CyclingPortalInterface {
                 throw new InvalidStageTypeException("Time-trial stages can't contain any segments.");
             }
 
-            Segment segment = new Segment(stageId, location, SegmentType.SPRINT, 0.0, 0.0);
+            Segment segment = new Segment(this.ids.nextSegmentId(), stageId, location, SegmentType.SPRINT, 0.0, 0.0);
             this.segments.add(segment);
+            this.segmentsById.put(segment.getId(), segment);
+            stage.addSegment(segment.getId());
+            this.findRace(stage.getRaceId()).incrementVersion();
             return segment.getId();
         }
 	}
@@ -767,7 +1056,7 @@ public class CyclingPortal implements CyclingPortalInterface {
         // Finds a segment by ID, then removes it from the segments attribute.
         // Note that any valid rider results already in a stage will become invalid upon the removal of a segment.
 
-        Segment segment = this.getSegment(segmentId);
+        Segment segment = this.findSegment(segmentId);
         if (segment == null)
         {
             throw new IDNotRecognisedException("Segment ID doesn't exist.");
@@ -775,6 +1064,10 @@ public class CyclingPortal implements CyclingPortalInterface {
         else
         {
             this.segments.remove(segment);
+            this.segmentsById.remove(segmentId);
+            Stage stage = this.findStage(segment.getStageId());
+            stage.removeSegment(segmentId);
+            this.findRace(stage.getRaceId()).incrementVersion();
         }
 	}
 
@@ -782,7 +1075,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
         // Concludes the preparation of the given stage
         // ! test whether results can be gotten without this method - shouldnt be possible
-        Stage stage = this.getStage(stageId);
+        Stage stage = this.findStage(stageId);
         if (stage == null)
         {
             throw new IDNotRecognisedException("Stage ID doesn't exist.");
@@ -798,7 +1091,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	public int[] getStageSegments(int stageId) throws IDNotRecognisedException {
         // Returns an array of segment IDs of a stage, or throws an exception.
 
-        Stage stage = this.getStage(stageId);
+        Stage stage = this.findStage(stageId);
 
         // Need to deal with the fact that stage can be null if not found in getStage.
         if (stage == null)
@@ -807,14 +1100,7 @@ public class CyclingPortal implements CyclingPortalInterface {
         }
         else
         {
-            ArrayList<Integer> stageSegments = new ArrayList<>();
-            for (int i=0; i<this.segments.size(); i++)
-            {
-                if (this.segments.get(i).getStageId() == stageId)
-                {
-                    stageSegments.add(this.segments.get(i).getId());
-                }
-            }
+            ArrayList<Integer> stageSegments = stage.getSegments();
 
             int[] stageSegmentsArray = new int[stageSegments.size()];
             for (int i=0; i<stageSegments.size(); i++)
@@ -838,16 +1124,15 @@ public class CyclingPortal implements CyclingPortalInterface {
                 }
 			}
 
-			for (int i=0; i<this.teams.size(); i++)
+			if (this.teamIdsByName.containsKey(name))
 			{
-				if (this.teams.get(i).getName() == name)
-				{
-					throw new IllegalNameException("This team name is already taken.");
-                }
+				throw new IllegalNameException("This team name is already taken.");
 			}
 
-			Team team = new Team(name, description);
+			Team team = new Team(this.ids.nextTeamId(), name, description);
             this.teams.add(team);
+            this.teamsById.put(team.getId(), team);
+            this.teamIdsByName.put(name, team.getId());
             return team.getId();
 		}
 		else
@@ -859,7 +1144,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	@Override
 	public void removeTeam(int teamId) throws IDNotRecognisedException {
         // Finds the team and removes or throws an exception.
-        Team team = this.getTeam(teamId);
+        Team team = this.findTeam(teamId);
 
         if (team == null)
         {
@@ -869,19 +1154,17 @@ public class CyclingPortal implements CyclingPortalInterface {
         {
             // Cascade through all riders connected to the team by ID.
 
-            // Find the riders
-
-            ArrayList<Rider> riders = new ArrayList<>(this.riders);
-            for (Rider rider : riders)
+            // Find the riders (copied, as removeRider removes them from the team)
+            ArrayList<Integer> riders = new ArrayList<>(team.getRiders());
+            for (int riderId : riders)
             {
-                if (rider.getTeamId() == teamId)
-                {
-                    // Remove them
-                    this.removeRider(rider.getId());
-                }
+                // Remove them
+                this.removeRider(riderId);
             }
             // Remove the team
             this.teams.remove(team);
+            this.teamsById.remove(teamId);
+            this.teamIdsByName.remove(team.getName());
 		}
 	}
 
@@ -900,8 +1183,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	@Override
 	public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
         // Return the riders of a team, or throws an exception.
-        ArrayList<Integer> teamRiders = new ArrayList<>();
-        Team team = this.getTeam(teamId);
+        Team team = this.findTeam(teamId);
 
         // Need to deal with the fact that team can be null if not found in getTeam.
         if (team == null)
@@ -910,14 +1192,7 @@ public class CyclingPortal implements CyclingPortalInterface {
         }
         else
         {
-            for (int i=0; i<this.riders.size(); i++)
-            {
-                if (this.riders.get(i).getTeamId() == teamId)
-                {
-                    teamRiders.add(this.riders.get(i).getId());
-                }
-            }
-
+            ArrayList<Integer> teamRiders = team.getRiders();
             int[] teamRidersArray = new int[teamRiders.size()];
             for (int i=0; i<teamRiders.size(); i++)
             {
@@ -936,10 +1211,14 @@ public class CyclingPortal implements CyclingPortalInterface {
 		{
 			if (name != null)
 			{
-                if (this.getTeam(teamID) != null)
+                Team team = this.findTeam(teamID);
+                if (team != null)
                 {
-                    Rider rider = new Rider(teamID, -1, name, yearOfBirth);
+                    Rider rider = new Rider(this.ids.nextRiderId(), teamID, -1, name, yearOfBirth);
     				this.riders.add(rider);
+                    this.ridersById.put(rider.getId(), rider);
+                    team.addRider(rider.getId());
+                    this.addRiderBirthYear(rider);
     				return rider.getId();
                 }
                 throw new IDNotRecognisedException("Team ID doesn't exist.");
@@ -953,7 +1232,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	public void removeRider(int riderId) throws IDNotRecognisedException {
         // Iteratively searches for the first (and only) Rider with the given ID, and removes it.
 
-        Rider rider = this.getRider(riderId);
+        Rider rider = this.findRider(riderId);
 
         if (rider == null)
         {
@@ -964,19 +1243,17 @@ public class CyclingPortal implements CyclingPortalInterface {
             // Remove all rider results from stages
             for (Stage stage : this.stages)
             {
-                HashMap<Integer, ArrayList<LocalTime>> riderResults = stage.getRiderResults();
-                for (int key : riderResults.keySet())
+                if (stage.removeRiderResult(riderId))
                 {
-                    if (key == rider.getId())
-                    {
-                        riderResults.remove(key);
-                        stage.setRiderResults(riderResults);
-                    }
+                    this.findRace(stage.getRaceId()).incrementVersion();
                 }
             }
 
             // Remove the rider once this is done
             this.riders.remove(rider);
+            this.ridersById.remove(riderId);
+            this.findTeam(rider.getTeamId()).removeRider(riderId);
+            this.removeRiderBirthYear(rider);
         }
 	}
 
@@ -985,7 +1262,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
 			InvalidStageStateException {
 
-		Stage stage = this.getStage(stageId);
+		Stage stage = this.findStage(stageId);
 
         if (stage == null)
         {
@@ -993,7 +1270,7 @@ public class CyclingPortal implements CyclingPortalInterface {
         }
         else
         {
-            if (stage.getRiderResults().containsKey(riderId))
+            if (stage.getRiderResults().contains(riderId))
             {
                 throw new DuplicatedResultException("This stage already has a registered result for this rider.");
             }
@@ -1013,7 +1290,7 @@ public class CyclingPortal implements CyclingPortalInterface {
                 }
             }
 
-            if (checkpoints.length != this.getStageSegments(stageId).length)
+            if (checkpoints.length != stage.getSegments().size())
             {
                 // Checkpoints include the start and end points of the race, so 2 more checkpoints than segments are needed.
                 throw new InvalidCheckpointsException("Invalid result: Not all, or too many checkpoints are accounted for.");
@@ -1026,6 +1303,7 @@ public class CyclingPortal implements CyclingPortalInterface {
             }
 
             stage.addRiderResult(riderId, checkpoints);
+            this.findRace(stage.getRaceId()).incrementVersion();
         }
 
 	}
@@ -1033,23 +1311,18 @@ public class CyclingPortal implements CyclingPortalInterface {
 	@Override
 	public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
         // Returns the rider's results in the given stage, or an empty array if they don't have any.
-        Stage stage = this.getStage(stageId);
-        Rider rider = this.getRider(riderId);
+        Stage stage = this.findStage(stageId);
+        Rider rider = this.findRider(riderId);
 
         if (stage != null)
         {
             if (rider != null)
             {
-                // Allowed cast, as stage.getRiderResults().get(riderId) is of type ArrayList<LocalTime>.
-                ArrayList<LocalTime> results = stage.getRiderResults().get(riderId);
+                // The LocalTimes are only created here; the stage stores them as nanoseconds.
+                LocalTime[] results = stage.getRiderResults().getCheckpoints(riderId);
                 if (results != null)
                 {
-                    LocalTime[] resultsArray = new LocalTime[results.size()];
-                    for (int i=0; i<resultsArray.length; i++)
-                    {
-                        resultsArray[i] = results.get(i);
-                    }
-                    return resultsArray;
+                    return results;
                 }
                 return new LocalTime[0];
             }
@@ -1060,35 +1333,45 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
-        // Returns the adjusted elapsed time of a rider (the lowest time of all riders which reached the finish line
-        // less than a second before this rider).
-        Stage stage = this.getStage(stageId);
-        Rider rider = this.getRider(riderId);
+        // Returns the adjusted elapsed time of a rider (the time of the first rider in the bunch they finished in,
+        // where each rider of a bunch finished less than a second after the one ahead).
+        Stage stage = this.findStage(stageId);
+        Rider rider = this.findRider(riderId);
 
         if (stage != null)
         {
             if (rider != null)
             {
-                HashMap<Integer, ArrayList<LocalTime>> riderResults = stage.getRiderResults();
-                ArrayList<LocalTime> results = riderResults.get(riderId);
-                LocalTime[] resultsArray = new LocalTime[results.size()];
-                for (int i=0; i<resultsArray.length; i++)
+                int rank = stage.getRank(riderId);
+                if (rank == -1)
                 {
-                    resultsArray[i] = results.get(i);
+                    // No result registered for this rider.
+                    return null;
                 }
 
-                LocalTime finishingTime = resultsArray[resultsArray.length - 1];
+                // The adjusted times are calculated along with the stage's cached ranking.
+                return LocalTime.ofNanoOfDay(stage.getRankedAdjustedTimes()[rank]);
+            }
+            throw new IDNotRecognisedException("Rider ID doesn't exist.");
+        }
+        throw new IDNotRecognisedException("Stage ID doesn't exist.");
+	}
 
-                for (ArrayList<LocalTime> riderResult : riderResults.values())
+	@Override
+	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        // Removes a rider's result from the given stage.
+        Stage stage = this.findStage(stageId);
+        Rider rider = this.findRider(riderId);
+
+        if (stage != null)
+        {
+            if (rider != null)
+            {
+                if (stage.removeRiderResult(riderId))
                 {
-                    LocalTime comparedFinishingTime = riderResult.get(riderResult.size()-1);
-                    if (finishingTime.isAfter(comparedFinishingTime))
-                    {
-                        finishingTime = comparedFinishingTime;
-                    }
+                    this.findRace(stage.getRaceId()).incrementVersion();
                 }
-
-                return finishingTime;
+                return;
             }
             throw new IDNotRecognisedException("Rider ID doesn't exist.");
         }
@@ -1096,124 +1379,149 @@ public class CyclingPortal implements CyclingPortalInterface {
 	}
 
 	@Override
-	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
-        // Removes a rider's result from the given stage.
-        Stage stage = this.getStage(stageId);
-        Rider rider = this.getRider(riderId);
+	public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+		Stage stage = this.findStage(stageId);
+
+        if (stage != null)
+        {
+            // The stage keeps its ranking until its results change; return a copy of it.
+            return stage.getRanking().clone();
+        }
+        // Stage is null; the stage ID is invalid.
+        throw new IDNotRecognisedException("Stage ID doesn't exist.");
+	}
+
+    /**
+	 * Returns part of the ranking of a stage, without building the whole ranking. Suited to live
+     * leaderboards, which are read after every finisher.
+     *
+	 * @param stageId The ID of the stage being queried.
+	 * @param from The position in the ranking to start from (0 is the winner).
+	 * @param count The greatest number of riders to return.
+	 * @return The IDs of the riders ranked from..from+count-1; fewer if the ranking ends first.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in the system.
+	 */
+    public int[] getRidersRankInStage(int stageId, int from, int count) throws IDNotRecognisedException
+    {
+        Stage stage = this.findStage(stageId);
+
+        if (stage != null)
+        {
+            return stage.getRankedRiders(from, count);
+        }
+        throw new IDNotRecognisedException("Stage ID doesn't exist.");
+    }
+
+    /**
+	 * Returns the position of a rider in the ranking of a stage.
+     *
+	 * @param stageId The ID of the stage being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The index of the rider in getRidersRankInStage(stageId), or -1 if they have no result.
+	 * @throws IDNotRecognisedException If the ID does not match any stage or rider in the system.
+	 */
+    public int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException
+    {
+        Stage stage = this.findStage(stageId);
+        Rider rider = this.findRider(riderId);
 
         if (stage != null)
         {
             if (rider != null)
             {
-                HashMap<Integer, ArrayList<LocalTime>> riderResults = stage.getRiderResults();
-                riderResults.remove(riderId);
-                stage.setRiderResults(riderResults);
-                return;
+                return stage.getRank(riderId);
             }
             throw new IDNotRecognisedException("Rider ID doesn't exist.");
         }
         throw new IDNotRecognisedException("Stage ID doesn't exist.");
-	}
+    }
 
-	@Override
-	public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
-		Stage stage = this.getStage(stageId);
+    /**
+	 * Returns the first k riders of the ranking of a stage, e.g. the podium or a top 10.
+     *
+	 * @param stageId The ID of the stage being queried.
+	 * @param k The number of riders wanted.
+	 * @return The IDs of the k best-ranked riders, in order; fewer if fewer have a result.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in the system.
+	 */
+    public int[] getTopRidersInStage(int stageId, int k) throws IDNotRecognisedException
+    {
+        // The stage's leaderboard is already in order, so only the first k entries are read.
+        return this.getRidersRankInStage(stageId, 0, k);
+    }
+
+    /**
+	 * Returns where a rider stands in a stage, and how far behind the winner on adjusted time.
+     *
+	 * @param stageId The ID of the stage being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's rank, adjusted elapsed time and gap to the winner, or null if they have no result.
+	 * @throws IDNotRecognisedException If the ID does not match any stage or rider in the system.
+	 */
+    public RiderPosition getRiderPositionInStage(int stageId, int riderId) throws IDNotRecognisedException
+    {
+        Stage stage = this.findStage(stageId);
+        Rider rider = this.findRider(riderId);
 
         if (stage != null)
         {
-            // Simplify the map to Rider : Finish Time
-            HashMap<Integer, ArrayList<LocalTime>> riderResults = stage.getRiderResults();
-            if (riderResults.keySet().size() > 0)
+            if (rider != null)
             {
-                HashMap<Integer, LocalTime> riderFinishes = new HashMap<Integer, LocalTime>();
-                // Populate the simplified map with finishing times
-                for (int key : riderResults.keySet())
-                {
-                    ArrayList<LocalTime> riderCheckpoints = riderResults.get(key);
-                    riderFinishes.put(key, riderCheckpoints.get(riderCheckpoints.size()-1));
-                }
-
-                // Make an ArrayList containing all of the finishing times; sort it
-                ArrayList<LocalTime> sortedFinishes = new ArrayList<LocalTime>(riderFinishes.values());
-                Collections.sort(sortedFinishes);
-
-                // Make an array of the same size as sortedFinishes to match the return type
-                // This will contain the Riders IDs sorted by rank.
-                // Create a variable to track the position in the array to ensure an index error doesn't occur.
-                int[] sortedRiders = new int[sortedFinishes.size()];
-                int sortedRidersIndex = 0;
-
-                // Iterate over the sorted finishing times...
-                for (LocalTime finish : sortedFinishes)
+                int rank = stage.getRank(riderId);
+                if (rank == -1)
                 {
-                    // Iterate a second time, over the key set of riderResults (i.e. the list of rider IDs)
-                    for (int key : riderResults.keySet())
-                    {
-                        // Check if the rider has the same time as the sorted time
-                        // If they do, the rider ID will be matched to the same index
-                        // belonging to the finishing time (so it will be indexed by
-                        // its rank).
-                        if (finish.equals(riderResults.get(key).get(riderResults.size()-1)) && sortedRidersIndex < sortedRiders.length)
-                        {
-                            // Assign the rider ID (key) to the correct index, increment the index for the
-                            // next pass.
-                            sortedRiders[sortedRidersIndex] = key;
-                            sortedRidersIndex++;
-                        }
-                    }
+                    return null;
                 }
 
-                // Return the sorted array of rider IDs.
-                return sortedRiders;
+                long[] adjustedTimes = stage.getRankedAdjustedTimes();
+                return new RiderPosition(riderId, rank, adjustedTimes[rank], adjustedTimes[rank] - adjustedTimes[0]);
             }
-            return new int[0];
+            throw new IDNotRecognisedException("Rider ID doesn't exist.");
         }
-        // Stage is null; the stage ID is invalid.
         throw new IDNotRecognisedException("Stage ID doesn't exist.");
-	}
+    }
 
 	@Override
 	public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
 
-        Stage stage = this.getStage(stageId);
+        Stage stage = this.findStage(stageId);
         if (stage != null)
         {
-            // Simplify the map to Rider : Finish Time
-            HashMap<Integer, ArrayList<LocalTime>> riderResults = stage.getRiderResults();
-            HashMap<Integer, LocalTime> riderFinishes = new HashMap<Integer, LocalTime>();
-
-            // Populate the simplified map with finishing times
-            for (int key : riderResults.keySet())
-            {
-                ArrayList<LocalTime> riderCheckpoints = riderResults.get(key);
-                riderFinishes.put(key, riderCheckpoints.get(riderCheckpoints.size()-1));
-            }
-
-            // Get adjusted elapsed times in stage
-            HashMap<Integer, LocalTime> adjustedRiderFinishes = new HashMap<Integer, LocalTime>();
-
-            for (int riderId : riderFinishes.keySet())
-            {
-                adjustedRiderFinishes.put(riderId, this.getRiderAdjustedElapsedTimeInStage(stageId, riderId));
-            }
-
-            // Make an ArrayList containing all of the finishing times; sort it
-            ArrayList<LocalTime> sortedAdjustedFinishes = new ArrayList<LocalTime>(adjustedRiderFinishes.values());
-            Collections.sort(sortedAdjustedFinishes);
-
-            LocalTime[] sortedAdjustedFinishesArray = new LocalTime[sortedAdjustedFinishes.size()];
+            // The adjusted times are cached in ranking order along with the stage's ranking.
+            long[] sortedAdjustedFinishes = stage.getRankedAdjustedTimes();
+            LocalTime[] sortedAdjustedFinishesArray = new LocalTime[sortedAdjustedFinishes.length];
             for (int i=0; i<sortedAdjustedFinishesArray.length; i++)
             {
-                sortedAdjustedFinishesArray[i] = sortedAdjustedFinishes.get(i);
+                sortedAdjustedFinishesArray[i] = LocalTime.ofNanoOfDay(sortedAdjustedFinishes[i]);
             }
             return sortedAdjustedFinishesArray;
         }
         throw new IDNotRecognisedException("Stage ID doesn't exist.");
 	}
 
+    /**
+	 * Get the gap of each rider to the stage winner, on adjusted elapsed time.
+     *
+	 * @param stageId The ID of the stage being queried.
+	 * @return The gaps in milliseconds, in the order of getRidersRankInStage (so the first is 0).
+     *         An empty array if there is no result for the stage.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in the system.
+	 */
+    public long[] getRankedGapsInStage(int stageId) throws IDNotRecognisedException
+    {
+        Stage stage = this.findStage(stageId);
+
+        if (stage != null)
+        {
+            // The gaps are worked out with the stage's cached ranking.
+            return stage.getRankedGapMillis().clone();
+        }
+        throw new IDNotRecognisedException("Stage ID doesn't exist.");
+    }
+
 	@Override
 	public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
-        Stage stage = this.getStage(stageId);
+        Stage stage = this.findStage(stageId);
 
         if (stage == null)
         {
@@ -1221,21 +1529,20 @@ public class CyclingPortal implements CyclingPortalInterface {
         }
         else
         {
-            int[] ranking = this.getRidersRankInStage(stageId);
+            // Set the points values to the finishing points; the race's scoring scheme gives 0 past its table.
+            ScoringScheme scoringScheme = this.findRace(stage.getRaceId()).getScoringScheme();
+            int[] ranking = stage.getRanking();
             int[] points = new int[ranking.length];
             for (int i=0; i < ranking.length; i++)
             {
-                // Set the points values to the finishing points.
-                try {
-                    int mapValue = stagePointsMap.get(stage.getType())[i];
-                    points[i] = mapValue;
-                }
-                catch (ArrayIndexOutOfBoundsException e)
-                {
-                    // The array found from stagePointsMap.get(stage.getType()) returned null;
-                    // this means that the number of points scored is 0.
-                    points[i] = 0;
-                }
+                points[i] = scoringScheme.getStagePoints(stage.getType(), i);
+            }
+
+            // Add the points from the intermediate sprints.
+            int[] sprintPoints = this.getSegmentPointsInStage(stage, true);
+            for (int i=0; i < ranking.length; i++)
+            {
+                points[i] += sprintPoints[i];
             }
             return points;
         }
@@ -1244,7 +1551,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 	@Override
 	public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
         // !
-        Stage stage = this.getStage(stageId);
+        Stage stage = this.findStage(stageId);
 
         if (stage == null)
         {
@@ -1252,66 +1559,8 @@ public class CyclingPortal implements CyclingPortalInterface {
         }
         else
         {
-            int[] ranking = this.getRidersRankInStage(stageId);
-            int[] points = new int[ranking.length];
-
-            HashMap<Integer, ArrayList<LocalTime>> riderResults = stage.getRiderResults();
-            int[] segments = this.getStageSegments(stageId);
-            for (int i=0; i < segments.length; i++)
-            {
-                Segment segment = this.getSegment(segments[i]);
-                if (segment != null)
-                {
-                    // Simplify the map to Rider : Checkpoint Time
-                    HashMap<Integer, LocalTime> riderSegmentFinishes = new HashMap<Integer, LocalTime>();
-
-                    // Populate the simplified map with finishing times
-                    for (int key : riderResults.keySet())
-                    {
-                        ArrayList<LocalTime> riderCheckpoints = riderResults.get(key);
-                        riderSegmentFinishes.put(key, riderCheckpoints.get(i));
-                    }
-
-                    // Make an ArrayList containing all of the finishing times; sort it
-                    ArrayList<LocalTime> sortedSegmentFinishes = new ArrayList<LocalTime>(riderSegmentFinishes.values());
-                    Collections.sort(sortedSegmentFinishes);
-
-                    // Create a variable to track the position in the array to ensure an index error doesn't occur.
-                    int[] sortedRiders = new int[sortedSegmentFinishes.size()];
-                    int sortedRidersIndex = 0;
-
-                    // Iterate over the sorted finishing times...
-                    for (LocalTime finish : sortedSegmentFinishes)
-                    {
-                        // Iterate a second time, over the key set of riderResults (i.e. the list of rider IDs)
-                        for (int key : riderResults.keySet())
-                        {
-                            int index = this.intLinearSearch(ranking, key);
-                            // Check if the rider has the same time as the sorted time
-                            // If they do, the rider ID will be matched to the same index
-                            // belonging to the finishing time (so it will be indexed by
-                            // its rank).
-                            if (finish.equals(riderResults.get(key).get(i)) && sortedRidersIndex < sortedRiders.length && index != -1)
-                            {
-                                // Add the correct number of points to the "index"th term of ranking, based on the position...
-                                // ... of the rider in the SEGMENT ranking (sortedRiders)
-                                try {
-                                    points[index] += segmentPointsMap.get(segment.getType())[sortedRidersIndex];
-                                    sortedRidersIndex++;
-                                }
-                                catch (IndexOutOfBoundsException e)
-                                {
-                                    // Number of points = 0, by default
-                                    sortedRidersIndex++;
-                                }
-                            }
-                        }
-                    }
-
-
-                }
-            }
-            return points;
+            // Only the categorised climbs score mountain points.
+            return this.getSegmentPointsInStage(stage, false);
         }
 	}
 
@@ -1323,6 +1572,18 @@ public class CyclingPortal implements CyclingPortalInterface {
         this.segments = new ArrayList<Segment>();
         this.riders = new ArrayList<Rider>();
         this.teams = new ArrayList<Team>();
+        this.racesById = new IntObjectMap<Race>();
+        this.stagesById = new IntObjectMap<Stage>();
+        this.segmentsById = new IntObjectMap<Segment>();
+        this.ridersById = new IntObjectMap<Rider>();
+        this.teamsById = new IntObjectMap<Team>();
+        this.raceIdsByName = new HashMap<String, Integer>();
+        this.stageIdsByName = new HashMap<String, Integer>();
+        this.teamIdsByName = new HashMap<String, Integer>();
+        this.ridersByBirthYear = new HashMap<Integer, BitSet>();
+        this.classificationCacheHits.reset();
+        this.classificationCacheMisses.reset();
+        this.ids = new IdAllocator();
 	}
 
 	@Override
@@ -1346,25 +1607,44 @@ public class CyclingPortal implements CyclingPortalInterface {
             if (obj instanceof CyclingPortal)
             {
                 CyclingPortal portal = (CyclingPortal)obj;
+
+                // Carry on from the saved portal's IDs. Each loaded ID is also reserved, in case the save
+                // predates the allocator, so a new entity can never take the ID of a loaded one.
+                this.ids.restore(portal.ids);
                 for (Race race : portal.races)
                 {
+                    this.ids.reserveRaceId(race.getId());
                     this.races.add(race);
+                    this.racesById.put(race.getId(), race);
+                    this.raceIdsByName.put(race.getName(), race.getId());
                 }
                 for (Stage stage : portal.stages)
                 {
+                    stage.setResultStorage(this.resultStorage);
+                    this.ids.reserveStageId(stage.getId());
                     this.stages.add(stage);
+                    this.stagesById.put(stage.getId(), stage);
+                    this.stageIdsByName.put(stage.getName(), stage.getId());
                 }
                 for (Segment segment : portal.segments)
                 {
+                    this.ids.reserveSegmentId(segment.getId());
                     this.segments.add(segment);
+                    this.segmentsById.put(segment.getId(), segment);
                 }
                 for (Team team : portal.teams)
                 {
+                    this.ids.reserveTeamId(team.getId());
                     this.teams.add(team);
+                    this.teamsById.put(team.getId(), team);
+                    this.teamIdsByName.put(team.getName(), team.getId());
                 }
                 for (Rider rider : portal.riders)
                 {
+                    this.ids.reserveRiderId(rider.getId());
                     this.riders.add(rider);
+                    this.ridersById.put(rider.getId(), rider);
+                    this.addRiderBirthYear(rider);
                 }
             }
 
@@ -1379,65 +1659,33 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public void removeRaceByName(String name) throws NameNotRecognisedException {
-        // Iteratively searches for the first (and only) Race with the given name, and removes it...
+        // Looks up the (only) Race with the given name in the name index, and removes it...
         // ... or throws an exception.
+        Integer raceId = this.raceIdsByName.get(name);
 
-        // Cascade through all stages and segments connected to the race by ID.
-
-        boolean raceNameFound = false;
-
-        ArrayList<Race> races = new ArrayList<>(this.races);
-        ArrayList<Stage> stages = new ArrayList<>(this.stages);
-        ArrayList<Segment> segments = new ArrayList<>(this.segments);
-
-        for (Race race : races)
-        {
-            if (race.getName().equals(name))
-            {
-                raceNameFound = true;
-
-                // Find the stages linked to this Race
-                for (Stage stage : stages)
-                {
-                    if (stage.getRaceId() == race.getId())
-                    {
-                        // Find the segments linked to these stages
-                        for (Segment segment : segments)
-                        {
-                            if (segment.getStageId() == stage.getId())
-                            {
-                                // Delete the segments
-                                this.segments.remove(segment);
-                            }
-                        }
-                        // Delete the stages
-                        this.stages.remove(stage);
-                    }
-                }
-                // Delete the Race.
-                this.races.remove(race);
-            }
-        }
-
-        if (!raceNameFound)
+        if (raceId == null)
         {
             throw new NameNotRecognisedException("No Races were found with this name.");
         }
+        this.deleteRace(this.findRace(raceId));
 	}
 
 	@Override
 	public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
-		Race race = this.getRace(raceId);
+		Race race = this.findRace(raceId);
 
         if (race != null)
         {
-            HashMap<Integer, LocalTime> riderToTime = this.getRiderToTotalRaceTimeMap(raceId, true);
-            int[] sortedRiders = this.sortRidersByTotalRaceTime(riderToTime);
-            LocalTime[] sortedTimes = new LocalTime[sortedRiders.length];
+            // The race keeps its classification until its totals change.
+            this.getAdjustedTotals(race);
+            long[] classifiedTimes = race.getClassificationTimes();
+            LocalTime[] sortedTimes = new LocalTime[classifiedTimes.length];
 
-            for (int i=0; i<sortedRiders.length; i++)
+            for (int i=0; i<classifiedTimes.length; i++)
             {
-                sortedTimes[i] = riderToTime.get(sortedRiders[i]);
+                // A LocalTime can't hold a total of a day or more, so it wraps at midnight;
+                // getGeneralClassificationDurationsInRace gives the exact totals.
+                sortedTimes[i] = LocalTime.ofNanoOfDay(classifiedTimes[i] % NANOS_PER_DAY);
             }
 
             return sortedTimes;
@@ -1448,13 +1696,72 @@ public class CyclingPortal implements CyclingPortalInterface {
         }
 	}
 
+    /**
+	 * Returns the total adjusted times of the general classification of a race, in nanoseconds.
+     * Unlike getGeneralClassificationTimesInRace, totals of a day or more are exact.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @return The totals, in the order of getRidersGeneralClassificationRank.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public long[] getGeneralClassificationNanosInRace(int raceId) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+
+        if (race != null)
+        {
+            this.getAdjustedTotals(race);
+            return race.getClassificationTimes().clone();
+        }
+        throw new IDNotRecognisedException("Race ID doesn't exist.");
+    }
+
+    /**
+	 * Returns the total adjusted times of the general classification of a race as Durations.
+     * Unlike getGeneralClassificationTimesInRace, totals of a day or more are exact.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @return The totals, in the order of getRidersGeneralClassificationRank.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public Duration[] getGeneralClassificationDurationsInRace(int raceId) throws IDNotRecognisedException
+    {
+        long[] classifiedTimes = this.getGeneralClassificationNanosInRace(raceId);
+        Duration[] durations = new Duration[classifiedTimes.length];
+        for (int i=0; i<classifiedTimes.length; i++)
+        {
+            durations[i] = Duration.ofNanos(classifiedTimes[i]);
+        }
+        return durations;
+    }
+
+    /**
+	 * Get the gap of each rider to the leader of the general classification of a race.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @return The gaps in milliseconds, in the order of getRidersGeneralClassificationRank (so the first is 0).
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public long[] getGeneralClassificationGapsInRace(int raceId) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+
+        if (race != null)
+        {
+            // The gaps are worked out with the race's cached classification.
+            this.getAdjustedTotals(race);
+            return race.getClassificationGapMillis().clone();
+        }
+        throw new IDNotRecognisedException("Race ID doesn't exist.");
+    }
+
 	@Override
 	public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
-        Race race = this.getRace(raceId);
+        Race race = this.findRace(raceId);
 
         if (race != null)
         {
-            return getAnyTypeOfRidersPointsInRace(raceId, "Standard");
+            return this.getCachedRaceClassification(race, RaceClassification.POINTS);
         }
         else
         {
@@ -1464,11 +1771,11 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
-        Race race = this.getRace(raceId);
+        Race race = this.findRace(raceId);
 
         if (race != null)
         {
-            return getAnyTypeOfRidersPointsInRace(raceId, "Mountain");
+            return this.getCachedRaceClassification(race, RaceClassification.MOUNTAIN_POINTS);
         }
         else
         {
@@ -1478,14 +1785,11 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
-        Race race = this.getRace(raceId);
+        Race race = this.findRace(raceId);
 
         if (race != null)
         {
-            HashMap<Integer, LocalTime> riderToTime = this.getRiderToTotalRaceTimeMap(raceId, true);
-            int[] sortedRiders = this.sortRidersByTotalRaceTime(riderToTime);
-
-            return sortedRiders;
+            return this.getCachedRaceClassification(race, RaceClassification.GENERAL_CLASSIFICATION_RANK);
         }
         else
         {
@@ -1493,13 +1797,77 @@ public class CyclingPortal implements CyclingPortalInterface {
         }
 	}
 
+    /**
+	 * Returns the first k riders of the general classification of a race, without sorting the whole field.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @param k The number of riders wanted.
+	 * @return The IDs of the k best-ranked riders, in the order of getRidersGeneralClassificationRank;
+     *         fewer if fewer have a result.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public int[] getTopGeneralClassification(int raceId, int k) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+        if (race == null)
+        {
+            throw new IDNotRecognisedException("Race ID doesn't exist.");
+        }
+
+        // Read the race's running totals directly, rather than copying them into a new map.
+        IntLongMap adjustedTotals = this.getAdjustedTotals(race);
+        int[] riders = adjustedTotals.keys();
+        long[] times = new long[riders.length];
+        for (int i=0; i<riders.length; i++)
+        {
+            times[i] = adjustedTotals.getOrDefault(riders[i], 0);
+        }
+
+        // Keep the best k in a bounded heap, then sort only those.
+        int count = Ranking.top(times, riders, riders.length, k);
+        return Arrays.copyOf(riders, count);
+    }
+
+    /**
+	 * Returns where a rider stands in the general classification of a race, and how far behind the leader.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @param riderId The ID of the rider.
+	 * @return The rider's rank, total adjusted time and gap to the leader, or null if they have no result in the race.
+	 * @throws IDNotRecognisedException If the ID does not match any race or rider in the system.
+	 */
+    public RiderPosition getRiderPositionInRace(int raceId, int riderId) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+        Rider rider = this.findRider(riderId);
+
+        if (race != null)
+        {
+            if (rider != null)
+            {
+                // The race indexes its classification by rider, so no search is needed.
+                this.getAdjustedTotals(race);
+                int rank = race.getClassificationRank(riderId);
+                if (rank == -1)
+                {
+                    return null;
+                }
+
+                long[] classifiedTimes = race.getClassificationTimes();
+                return new RiderPosition(riderId, rank, classifiedTimes[rank], classifiedTimes[rank] - classifiedTimes[0]);
+            }
+            throw new IDNotRecognisedException("Rider ID doesn't exist.");
+        }
+        throw new IDNotRecognisedException("Race ID doesn't exist.");
+    }
+
 	@Override
 	public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
-        Race race = this.getRace(raceId);
+        Race race = this.findRace(raceId);
 
         if (race != null)
         {
-            return this.getAnyTypeOfRidersPointClassificationRank(raceId, "Standard");
+            return this.getCachedRaceClassification(race, RaceClassification.POINT_CLASSIFICATION_RANK);
         }
         else
         {
@@ -1509,11 +1877,11 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
-        Race race = this.getRace(raceId);
+        Race race = this.findRace(raceId);
 
         if (race != null)
         {
-            return this.getAnyTypeOfRidersPointClassificationRank(raceId, "Mountain");
+            return this.getCachedRaceClassification(race, RaceClassification.MOUNTAIN_POINT_CLASSIFICATION_RANK);
         }
         else
         {
@@ -1521,4 +1889,187 @@ public class CyclingPortal implements CyclingPortalInterface {
         }
 	}
 
+    /**
+	 * Get the team classification of a race. Each team's time is the sum of the adjusted elapsed times
+     * of its best three riders in each stage. Only teams with at least three finishers in every stage
+     * with results are classified.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @return The ranked list of team IDs, from the lowest total time; teams with equal times are
+     *         ranked by ID. An empty list if no team is classified.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public int[] getTeamsClassificationRank(int raceId) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+
+        if (race != null)
+        {
+            return this.getTeamClassification(race).getTeams().clone();
+        }
+        throw new IDNotRecognisedException("Race ID doesn't exist.");
+    }
+
+    /**
+	 * Get the team classification times of a race; see getTeamsClassificationRank. Team times span
+     * many riders and stages, so they are given as Durations rather than LocalTimes.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @return The total time of each team, in the order of getTeamsClassificationRank.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public Duration[] getTeamClassificationTimesInRace(int raceId) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+
+        if (race != null)
+        {
+            long[] times = this.getTeamClassification(race).getTimesNanos();
+            Duration[] sortedTimes = new Duration[times.length];
+            for (int i=0; i<times.length; i++)
+            {
+                sortedTimes[i] = Duration.ofNanos(times[i]);
+            }
+            return sortedTimes;
+        }
+        throw new IDNotRecognisedException("Race ID doesn't exist.");
+    }
+
+    /**
+	 * Get the gap of each team to the leading team in the team classification of a race.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @return The gaps in milliseconds, in the order of getTeamsClassificationRank (so the first is 0).
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public long[] getTeamClassificationGapsInRace(int raceId) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+
+        if (race != null)
+        {
+            return this.getTeamClassification(race).getGapMillis().clone();
+        }
+        throw new IDNotRecognisedException("Race ID doesn't exist.");
+    }
+
+    /**
+	 * Get the young rider classification of a race: the general classification of the riders aged
+     * 25 or under in the year of the race.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @return The ranked list of rider IDs. An empty list if there is no result for the race.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public int[] getYoungRidersClassificationRank(int raceId) throws IDNotRecognisedException
+    {
+        return this.getAgeFilteredGeneralClassification(raceId, 0, YOUNG_RIDER_MAX_AGE);
+    }
+
+    /**
+	 * Get the gap of each rider in the young rider classification of a race to its leader.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @return The gaps in milliseconds, in the order of getYoungRidersClassificationRank (so the first is 0).
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public long[] getYoungRidersClassificationGapsInRace(int raceId) throws IDNotRecognisedException
+    {
+        return this.getAgeFilteredGeneralClassificationGaps(raceId, 0, YOUNG_RIDER_MAX_AGE);
+    }
+
+    /**
+	 * Get the classification of an age band of a race (e.g. masters aged 40 to 49): the general
+     * classification of the riders whose age in the year of the race is within the band.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @param minAge The youngest age in the band.
+	 * @param maxAge The oldest age in the band.
+	 * @return The ranked list of rider IDs. An empty list if there is no result for the race.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 * @throws IllegalArgumentException If either age is negative, or minAge is greater than maxAge.
+	 */
+    public int[] getRidersAgeBandClassificationRank(int raceId, int minAge, int maxAge) throws IDNotRecognisedException
+    {
+        return this.getAgeFilteredGeneralClassification(raceId, minAge, maxAge);
+    }
+
+    /**
+	 * Get the gap of each rider in the classification of an age band of a race to the band's leader.
+     *
+	 * @param raceId The ID of the race being queried.
+	 * @param minAge The youngest age in the band.
+	 * @param maxAge The oldest age in the band.
+	 * @return The gaps in milliseconds, in the order of getRidersAgeBandClassificationRank (so the first is 0).
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 * @throws IllegalArgumentException If either age is negative, or minAge is greater than maxAge.
+	 */
+    public long[] getAgeBandClassificationGapsInRace(int raceId, int minAge, int maxAge) throws IDNotRecognisedException
+    {
+        return this.getAgeFilteredGeneralClassificationGaps(raceId, minAge, maxAge);
+    }
+
+    /**
+	 * Sets the points a race awards for stage finishes and segments, in place of the default scheme.
+     *
+	 * @param raceId The ID of the race.
+	 * @param scoringScheme The scoring scheme.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public void setRaceScoringScheme(int raceId, ScoringScheme scoringScheme) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+
+        if (race != null)
+        {
+            if (scoringScheme == null)
+            {
+                throw new IllegalArgumentException("Scoring scheme cannot be null.");
+            }
+            race.setScoringScheme(scoringScheme);
+            return;
+        }
+        throw new IDNotRecognisedException("Race ID doesn't exist.");
+    }
+
+    /**
+	 * Returns the points a race awards for stage finishes and segments.
+     *
+	 * @param raceId The ID of the race.
+	 * @return The race's scoring scheme.
+	 * @throws IDNotRecognisedException If the ID does not match any race in the system.
+	 */
+    public ScoringScheme getRaceScoringScheme(int raceId) throws IDNotRecognisedException
+    {
+        Race race = this.findRace(raceId);
+
+        if (race != null)
+        {
+            return race.getScoringScheme();
+        }
+        throw new IDNotRecognisedException("Race ID doesn't exist.");
+    }
+
+    /**
+	 * Returns the number of race classification reads (general, points, mountain points and team
+     * classifications, and points in race) that were answered from a race's cache.
+     *
+	 * @return The number of cache hits.
+	 */
+    public long getClassificationCacheHits()
+    {
+        return this.classificationCacheHits.sum();
+    }
+
+    /**
+	 * Returns the number of race classification reads that had to be worked out, because something in the
+     * race had changed since the last read.
+     *
+	 * @return The number of cache misses.
+	 */
+    public long getClassificationCacheMisses()
+    {
+        return this.classificationCacheMisses.sum();
+    }
+
 }
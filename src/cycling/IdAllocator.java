@@ -0,0 +1,104 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the IDs of a portal's races, stages, segments, teams and
+ * riders. Each kind of entity has its own counter, holding the highest ID
+ * given out so far (its high-water mark), so IDs start at 1 and are never
+ * reused by the portal. The counters are atomic, so IDs can be taken from
+ * several threads at once without two entities getting the same one.
+ * <p>
+ * The allocator belongs to one portal and is saved along with it, so a
+ * loaded portal carries on from where the saved one left off.
+ */
+public class IdAllocator implements Serializable
+{
+    // Attributes
+    private final AtomicInteger lastRaceId;
+    private final AtomicInteger lastStageId;
+    private final AtomicInteger lastSegmentId;
+    private final AtomicInteger lastTeamId;
+    private final AtomicInteger lastRiderId;
+
+    public IdAllocator()
+    {
+        this.lastRaceId = new AtomicInteger();
+        this.lastStageId = new AtomicInteger();
+        this.lastSegmentId = new AtomicInteger();
+        this.lastTeamId = new AtomicInteger();
+        this.lastRiderId = new AtomicInteger();
+    }
+
+    public int nextRaceId()
+    {
+        return this.lastRaceId.incrementAndGet();
+    }
+
+    public int nextStageId()
+    {
+        return this.lastStageId.incrementAndGet();
+    }
+
+    public int nextSegmentId()
+    {
+        return this.lastSegmentId.incrementAndGet();
+    }
+
+    public int nextTeamId()
+    {
+        return this.lastTeamId.incrementAndGet();
+    }
+
+    public int nextRiderId()
+    {
+        return this.lastRiderId.incrementAndGet();
+    }
+
+    // The reserve methods make sure an ID that is already in use (e.g. by a loaded entity) is never given out.
+
+    public void reserveRaceId(int raceId)
+    {
+        this.lastRaceId.accumulateAndGet(raceId, Math::max);
+    }
+
+    public void reserveStageId(int stageId)
+    {
+        this.lastStageId.accumulateAndGet(stageId, Math::max);
+    }
+
+    public void reserveSegmentId(int segmentId)
+    {
+        this.lastSegmentId.accumulateAndGet(segmentId, Math::max);
+    }
+
+    public void reserveTeamId(int teamId)
+    {
+        this.lastTeamId.accumulateAndGet(teamId, Math::max);
+    }
+
+    public void reserveRiderId(int riderId)
+    {
+        this.lastRiderId.accumulateAndGet(riderId, Math::max);
+    }
+
+    /**
+     * Raises each counter to at least the high-water mark of another allocator, such as
+     * the one saved with a portal being loaded.
+     *
+     * @param saved The other allocator, or null (for saves made before allocators were kept), which changes nothing.
+     */
+    public void restore(IdAllocator saved)
+    {
+        if (saved == null)
+        {
+            return;
+        }
+        this.reserveRaceId(saved.lastRaceId.get());
+        this.reserveStageId(saved.lastStageId.get());
+        this.reserveSegmentId(saved.lastSegmentId.get());
+        this.reserveTeamId(saved.lastTeamId.get());
+        this.reserveRiderId(saved.lastRiderId.get());
+    }
+}
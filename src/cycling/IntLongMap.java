@@ -0,0 +1,270 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A map from primitive int keys to primitive long values, using open
+ * addressing with linear probing. Neither keys nor values are boxed, and
+ * no node object is created per entry.
+ */
+public class IntLongMap implements Serializable
+{
+    // A key of 0 marks a free slot, so the key 0 itself is stored separately.
+    private static final int FREE = 0;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Attributes
+    private int[] keys;
+    private long[] values;
+    private int size;
+    private int mask;
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public IntLongMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntLongMap(int expectedSize)
+    {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2)
+        {
+            capacity <<= 1;
+        }
+        this.keys = new int[capacity];
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    public boolean containsKey(int key)
+    {
+        if (key == FREE)
+        {
+            return this.hasZeroKey;
+        }
+        return this.findSlot(key) >= 0;
+    }
+
+    /**
+     * Returns the value mapped to the key.
+     *
+     * @param key The key.
+     * @param defaultValue The value to return if the key is not in the map.
+     * @return The mapped value, or defaultValue.
+     */
+    public long getOrDefault(int key, long defaultValue)
+    {
+        if (key == FREE)
+        {
+            return this.hasZeroKey ? this.zeroValue : defaultValue;
+        }
+        int slot = this.findSlot(key);
+        return slot >= 0 ? this.values[slot] : defaultValue;
+    }
+
+    public void put(int key, long value)
+    {
+        if (key == FREE)
+        {
+            if (!this.hasZeroKey)
+            {
+                this.hasZeroKey = true;
+                this.size++;
+            }
+            this.zeroValue = value;
+            return;
+        }
+
+        int slot = this.insertionSlot(key);
+        this.values[slot] = value;
+    }
+
+    /**
+     * Adds the delta to the value mapped to the key, treating a missing key as 0.
+     *
+     * @param key The key.
+     * @param delta The amount to add.
+     * @return The new value.
+     */
+    public long addTo(int key, long delta)
+    {
+        if (key == FREE)
+        {
+            if (!this.hasZeroKey)
+            {
+                this.hasZeroKey = true;
+                this.size++;
+                this.zeroValue = 0;
+            }
+            this.zeroValue += delta;
+            return this.zeroValue;
+        }
+
+        int slot = this.insertionSlot(key);
+        this.values[slot] += delta;
+        return this.values[slot];
+    }
+
+    /**
+     * Removes the key from the map.
+     *
+     * @param key The key.
+     * @return Whether or not the key was in the map.
+     */
+    public boolean remove(int key)
+    {
+        if (key == FREE)
+        {
+            boolean had = this.hasZeroKey;
+            if (had)
+            {
+                this.hasZeroKey = false;
+                this.zeroValue = 0;
+                this.size--;
+            }
+            return had;
+        }
+
+        int slot = this.findSlot(key);
+        if (slot < 0)
+        {
+            return false;
+        }
+        this.shiftBack(slot);
+        this.size--;
+        return true;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(this.keys, FREE);
+        Arrays.fill(this.values, 0);
+        this.hasZeroKey = false;
+        this.zeroValue = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Returns the keys of the map in a new array. The order is unspecified.
+     *
+     * @return The keys.
+     */
+    public int[] keys()
+    {
+        int[] result = new int[this.size];
+        int index = 0;
+        if (this.hasZeroKey)
+        {
+            result[index++] = FREE;
+        }
+        for (int slot=0; slot<this.keys.length; slot++)
+        {
+            if (this.keys[slot] != FREE)
+            {
+                result[index++] = this.keys[slot];
+            }
+        }
+        return result;
+    }
+
+    private int findSlot(int key)
+    {
+        int slot = hash(key) & this.mask;
+        while (this.keys[slot] != FREE)
+        {
+            if (this.keys[slot] == key)
+            {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    private int insertionSlot(int key)
+    {
+        // Returns the slot holding the key, claiming a zeroed slot for it if it is new.
+        int slot = hash(key) & this.mask;
+        while (this.keys[slot] != FREE)
+        {
+            if (this.keys[slot] == key)
+            {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+
+        if ((this.size + 1) * 2 > this.keys.length)
+        {
+            this.resize(this.keys.length * 2);
+            return this.insertionSlot(key);
+        }
+        this.keys[slot] = key;
+        this.values[slot] = 0;
+        this.size++;
+        return slot;
+    }
+
+    private void shiftBack(int slot)
+    {
+        // Backward shift deletion: moves later members of the probe chain into the gap,
+        // so that no tombstones are needed.
+        int gap = slot;
+        int next = (gap + 1) & this.mask;
+        while (this.keys[next] != FREE)
+        {
+            int home = hash(this.keys[next]) & this.mask;
+            if (((next - home) & this.mask) >= ((next - gap) & this.mask))
+            {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                gap = next;
+            }
+            next = (next + 1) & this.mask;
+        }
+        this.keys[gap] = FREE;
+        this.values[gap] = 0;
+    }
+
+    private void resize(int capacity)
+    {
+        int[] oldKeys = this.keys;
+        long[] oldValues = this.values;
+        this.keys = new int[capacity];
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+        for (int i=0; i<oldKeys.length; i++)
+        {
+            if (oldKeys[i] != FREE)
+            {
+                int slot = hash(oldKeys[i]) & this.mask;
+                while (this.keys[slot] != FREE)
+                {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int key)
+    {
+        // Fibonacci hashing spreads sequential IDs across the table.
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,245 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A map from primitive int keys to objects, using open addressing with
+ * linear probing. Keys are never boxed and no node object is created per
+ * entry; keys and values live in two parallel arrays.
+ *
+ * @param <V> The type of the mapped values.
+ */
+public class IntObjectMap<V> implements Serializable
+{
+    // A key of 0 marks a free slot, so the key 0 itself is stored separately.
+    private static final int FREE = 0;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Attributes
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private boolean hasZeroKey;
+    private Object zeroValue;
+
+    public IntObjectMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntObjectMap(int expectedSize)
+    {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2)
+        {
+            capacity <<= 1;
+        }
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    public boolean containsKey(int key)
+    {
+        if (key == FREE)
+        {
+            return this.hasZeroKey;
+        }
+        return this.findSlot(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key)
+    {
+        if (key == FREE)
+        {
+            return (V)this.zeroValue;
+        }
+        int slot = this.findSlot(key);
+        return slot >= 0 ? (V)this.values[slot] : null;
+    }
+
+    /**
+     * Maps the key to the value.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @return The value previously mapped to the key, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value)
+    {
+        if (key == FREE)
+        {
+            Object previous = this.zeroValue;
+            if (!this.hasZeroKey)
+            {
+                this.hasZeroKey = true;
+                this.size++;
+            }
+            this.zeroValue = value;
+            return (V)previous;
+        }
+
+        int slot = hash(key) & this.mask;
+        while (this.keys[slot] != FREE)
+        {
+            if (this.keys[slot] == key)
+            {
+                Object previous = this.values[slot];
+                this.values[slot] = value;
+                return (V)previous;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.size++;
+        if (this.size * 2 > this.keys.length)
+        {
+            this.resize(this.keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the key from the map.
+     *
+     * @param key The key.
+     * @return The value that was mapped to the key, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key)
+    {
+        if (key == FREE)
+        {
+            Object previous = this.zeroValue;
+            if (this.hasZeroKey)
+            {
+                this.hasZeroKey = false;
+                this.zeroValue = null;
+                this.size--;
+            }
+            return (V)previous;
+        }
+
+        int slot = this.findSlot(key);
+        if (slot < 0)
+        {
+            return null;
+        }
+        Object previous = this.values[slot];
+        this.shiftBack(slot);
+        this.size--;
+        return (V)previous;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(this.keys, FREE);
+        Arrays.fill(this.values, null);
+        this.hasZeroKey = false;
+        this.zeroValue = null;
+        this.size = 0;
+    }
+
+    /**
+     * Returns the keys of the map in a new array. The order is unspecified.
+     *
+     * @return The keys.
+     */
+    public int[] keys()
+    {
+        int[] result = new int[this.size];
+        int index = 0;
+        if (this.hasZeroKey)
+        {
+            result[index++] = FREE;
+        }
+        for (int slot=0; slot<this.keys.length; slot++)
+        {
+            if (this.keys[slot] != FREE)
+            {
+                result[index++] = this.keys[slot];
+            }
+        }
+        return result;
+    }
+
+    private int findSlot(int key)
+    {
+        int slot = hash(key) & this.mask;
+        while (this.keys[slot] != FREE)
+        {
+            if (this.keys[slot] == key)
+            {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    private void shiftBack(int slot)
+    {
+        // Backward shift deletion: moves later members of the probe chain into the gap,
+        // so that no tombstones are needed.
+        int gap = slot;
+        int next = (gap + 1) & this.mask;
+        while (this.keys[next] != FREE)
+        {
+            int home = hash(this.keys[next]) & this.mask;
+            if (((next - home) & this.mask) >= ((next - gap) & this.mask))
+            {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                gap = next;
+            }
+            next = (next + 1) & this.mask;
+        }
+        this.keys[gap] = FREE;
+        this.values[gap] = null;
+    }
+
+    private void resize(int capacity)
+    {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        for (int i=0; i<oldKeys.length; i++)
+        {
+            if (oldKeys[i] != FREE)
+            {
+                int slot = hash(oldKeys[i]) & this.mask;
+                while (this.keys[slot] != FREE)
+                {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int key)
+    {
+        // Fibonacci hashing spreads sequential IDs across the table.
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,295 @@
+package cycling;
+
+import java.util.Arrays;
+
+/**
+ * An order-statistic tree of (key, rider ID) entries, ordered as in
+ * {@link Ranking}: by ascending key, then by ascending ID. It is a treap
+ * held in parallel arrays, with each node storing the size of its
+ * subtree, so that inserting, removing and finding the rank of an entry
+ * take O(log n) expected time, and reading k consecutive ranks takes
+ * O(log n + k).
+ * <p>
+ * A stage keeps one of these over its finishing times, so that a result
+ * arriving during a live finish does not re-sort the whole field.
+ */
+public class Leaderboard
+{
+    private static final int NIL = 0; // Node 0 is an empty tree of size 0
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Attributes
+    private long[] keys;
+    private int[] ids;
+    private int[] priorities;
+    private int[] left;
+    private int[] right;
+    private int[] sizes;
+    private int root;
+    private int nodes; // Nodes in use or on the free list, not counting NIL
+    private int freeList; // Freed nodes, linked through left
+    private int seed;
+
+    public Leaderboard()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Leaderboard(int expectedSize)
+    {
+        int capacity = Math.max(expectedSize, DEFAULT_CAPACITY) + 1;
+        this.keys = new long[capacity];
+        this.ids = new int[capacity];
+        this.priorities = new int[capacity];
+        this.left = new int[capacity];
+        this.right = new int[capacity];
+        this.sizes = new int[capacity];
+        this.root = NIL;
+        this.freeList = NIL;
+        this.seed = 0x2545F491;
+    }
+
+    public int size()
+    {
+        return this.sizes[this.root];
+    }
+
+    public void add(long key, int id)
+    {
+        int node = this.newNode(key, id);
+        this.root = this.insert(this.root, node);
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key The key of the entry.
+     * @param id The rider ID of the entry.
+     * @return Whether or not the entry was found.
+     */
+    public boolean remove(long key, int id)
+    {
+        int size = this.size();
+        this.root = this.remove(this.root, key, id);
+        return this.size() != size;
+    }
+
+    /**
+     * Returns the rank of an entry: the number of entries ordered before it.
+     * The entry itself does not need to be in the tree.
+     *
+     * @param key The key of the entry.
+     * @param id The rider ID of the entry.
+     * @return The rank, from 0.
+     */
+    public int rankOf(long key, int id)
+    {
+        int rank = 0;
+        int node = this.root;
+        while (node != NIL)
+        {
+            if (Ranking.compare(key, id, this.keys[node], this.ids[node]) <= 0)
+            {
+                node = this.left[node];
+            }
+            else
+            {
+                rank += this.sizes[this.left[node]] + 1;
+                node = this.right[node];
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Copies the entries with ranks from..from+count-1 into the given arrays, in order.
+     *
+     * @param from The rank of the first entry to copy.
+     * @param count The number of entries to copy.
+     * @param ids The array the rider IDs are copied into, from index 0.
+     * @param keys The array the keys are copied into, from index 0, or null if they aren't needed.
+     * @return The number of entries copied, which is less than count if the range passes the last entry.
+     */
+    public int getRange(int from, int count, int[] ids, long[] keys)
+    {
+        int to = Math.min(from + count, this.size());
+        if (from < 0 || from >= to)
+        {
+            return 0;
+        }
+        this.collect(this.root, 0, from, to, ids, keys);
+        return to - from;
+    }
+
+    private void collect(int node, int offset, int from, int to, int[] ids, long[] keys)
+    {
+        // Visits the subtree in order, skipping the parts outside ranks from..to-1.
+        // offset is the rank of the first entry of the subtree.
+        if (node == NIL || offset >= to || offset + this.sizes[node] <= from)
+        {
+            return;
+        }
+
+        int rank = offset + this.sizes[this.left[node]];
+        this.collect(this.left[node], offset, from, to, ids, keys);
+        if (rank >= from && rank < to)
+        {
+            ids[rank - from] = this.ids[node];
+            if (keys != null)
+            {
+                keys[rank - from] = this.keys[node];
+            }
+        }
+        this.collect(this.right[node], rank + 1, from, to, ids, keys);
+    }
+
+    private int insert(int node, int newNode)
+    {
+        if (node == NIL)
+        {
+            return newNode;
+        }
+
+        if (Ranking.compare(this.keys[newNode], this.ids[newNode], this.keys[node], this.ids[node]) < 0)
+        {
+            this.left[node] = this.insert(this.left[node], newNode);
+            if (this.priorities[this.left[node]] > this.priorities[node])
+            {
+                return this.rotateRight(node);
+            }
+        }
+        else
+        {
+            this.right[node] = this.insert(this.right[node], newNode);
+            if (this.priorities[this.right[node]] > this.priorities[node])
+            {
+                return this.rotateLeft(node);
+            }
+        }
+        this.update(node);
+        return node;
+    }
+
+    private int remove(int node, long key, int id)
+    {
+        if (node == NIL)
+        {
+            return NIL;
+        }
+
+        int comparison = Ranking.compare(key, id, this.keys[node], this.ids[node]);
+        if (comparison < 0)
+        {
+            this.left[node] = this.remove(this.left[node], key, id);
+        }
+        else if (comparison > 0)
+        {
+            this.right[node] = this.remove(this.right[node], key, id);
+        }
+        else
+        {
+            int merged = this.merge(this.left[node], this.right[node]);
+            this.freeNode(node);
+            return merged;
+        }
+        this.update(node);
+        return node;
+    }
+
+    private int merge(int a, int b)
+    {
+        // Joins two trees, where every entry of a is ordered before every entry of b.
+        if (a == NIL)
+        {
+            return b;
+        }
+        if (b == NIL)
+        {
+            return a;
+        }
+
+        if (this.priorities[a] > this.priorities[b])
+        {
+            this.right[a] = this.merge(this.right[a], b);
+            this.update(a);
+            return a;
+        }
+        this.left[b] = this.merge(a, this.left[b]);
+        this.update(b);
+        return b;
+    }
+
+    private int rotateRight(int node)
+    {
+        int child = this.left[node];
+        this.left[node] = this.right[child];
+        this.right[child] = node;
+        this.update(node);
+        this.update(child);
+        return child;
+    }
+
+    private int rotateLeft(int node)
+    {
+        int child = this.right[node];
+        this.right[node] = this.left[child];
+        this.left[child] = node;
+        this.update(node);
+        this.update(child);
+        return child;
+    }
+
+    private void update(int node)
+    {
+        this.sizes[node] = this.sizes[this.left[node]] + this.sizes[this.right[node]] + 1;
+    }
+
+    private int newNode(long key, int id)
+    {
+        int node;
+        if (this.freeList != NIL)
+        {
+            node = this.freeList;
+            this.freeList = this.left[node];
+        }
+        else
+        {
+            if (this.nodes + 1 == this.keys.length)
+            {
+                this.grow(this.keys.length * 2);
+            }
+            node = ++this.nodes;
+        }
+
+        // xorshift gives each node a random priority, which keeps the tree balanced on average.
+        this.seed ^= this.seed << 13;
+        this.seed ^= this.seed >>> 17;
+        this.seed ^= this.seed << 5;
+
+        this.keys[node] = key;
+        this.ids[node] = id;
+        this.priorities[node] = this.seed;
+        this.left[node] = NIL;
+        this.right[node] = NIL;
+        this.sizes[node] = 1;
+        return node;
+    }
+
+    private void freeNode(int node)
+    {
+        this.left[node] = this.freeList;
+        this.right[node] = NIL;
+        this.sizes[node] = 0;
+        this.freeList = node;
+    }
+
+    private void grow(int capacity)
+    {
+        this.keys = Arrays.copyOf(this.keys, capacity);
+        this.ids = Arrays.copyOf(this.ids, capacity);
+        this.priorities = Arrays.copyOf(this.priorities, capacity);
+        this.left = Arrays.copyOf(this.left, capacity);
+        this.right = Arrays.copyOf(this.right, capacity);
+        this.sizes = Arrays.copyOf(this.sizes, capacity);
+    }
+}
@@ -0,0 +1,118 @@
+package cycling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue for many producer threads and a single
+ * consumer thread. It is a ring of slots, each with a sequence number
+ * saying whose turn it is (after Dmitry Vyukov's bounded queue):
+ * <ul>
+ * <li>a slot whose sequence equals the tail position is free, and the
+ *     producer that claims that position (by compare-and-set on the tail)
+ *     fills it and sets its sequence to position + 1;</li>
+ * <li>a slot whose sequence equals the head position + 1 is full, and the
+ *     consumer empties it and sets its sequence to position + capacity,
+ *     freeing it for the next lap.</li>
+ * </ul>
+ * Producers never wait for each other or for the consumer; a producer that
+ * finds the queue full is told so rather than blocked.
+ * <p>
+ * The consumer needn't always be the same thread, but only one thread may
+ * consume at a time, and a thread taking over from another must first
+ * synchronize with it (e.g. by taking a lock the other held while consuming).
+ *
+ * @param <E> The type of the queued elements.
+ */
+public class MpscRingBuffer<E>
+{
+    // Attributes
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail; // Next position a producer will claim
+    private volatile long head; // Next position the consumer will read; only the consumer changes it
+    private final int mask;
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param capacity The number of slots, which must be a power of two.
+     * @throws IllegalArgumentException If the capacity is not a positive power of two.
+     */
+    public MpscRingBuffer(int capacity)
+    {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+        {
+            throw new IllegalArgumentException("Capacity must be a power of two.");
+        }
+        this.elements = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i=0; i<capacity; i++)
+        {
+            this.sequences.set(i, i);
+        }
+        this.tail = new AtomicLong();
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds an element at the tail of the queue. Safe to call from any number of threads at once.
+     *
+     * @param element The element, which must not be null.
+     * @return Whether or not the element was added; false if the queue was full.
+     */
+    public boolean offer(E element)
+    {
+        while (true)
+        {
+            long position = this.tail.get();
+            int slot = (int)position & this.mask;
+            long difference = this.sequences.get(slot) - position;
+            if (difference == 0)
+            {
+                if (this.tail.compareAndSet(position, position + 1))
+                {
+                    // The slot is ours; the sequence is set last, so the consumer only sees it once it is filled.
+                    this.elements[slot] = element;
+                    this.sequences.set(slot, position + 1);
+                    return true;
+                }
+            }
+            else if (difference < 0)
+            {
+                // The consumer hasn't emptied this slot since the last lap.
+                return false;
+            }
+            // Otherwise another producer claimed the position first; try the next one.
+        }
+    }
+
+    /**
+     * Removes the element at the head of the queue. Must only be called by the consumer.
+     *
+     * @return The element, or null if the queue is empty (or the producer of the head element hasn't finished
+     *         adding it).
+     */
+    @SuppressWarnings("unchecked")
+    public E poll()
+    {
+        int slot = (int)this.head & this.mask;
+        if (this.sequences.get(slot) != this.head + 1)
+        {
+            return null;
+        }
+
+        E element = (E)this.elements[slot];
+        this.elements[slot] = null;
+        this.sequences.set(slot, this.head + this.elements.length);
+        this.head++;
+        return element;
+    }
+
+    public boolean isEmpty()
+    {
+        // Whether no producer has claimed a position past the head, including ones still filling their slot.
+        // Safe to call from any thread, though the answer may be out of date by the time it is used.
+        return this.tail.get() == this.head;
+    }
+}
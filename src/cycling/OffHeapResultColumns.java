@@ -0,0 +1,205 @@
+package cycling;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalTime;
+
+/**
+ * Storage for the rider results of a stage, outside the Java heap. Each
+ * row is a fixed-width record in a direct ByteBuffer:
+ * <pre>
+ *   int riderId | int width | long checkpoint[0] ... long checkpoint[stride-1]
+ * </pre>
+ * where each checkpoint is a time in nanoseconds of the day. The garbage
+ * collector only sees the buffer object and the rider-to-row index, so a
+ * stage with tens of thousands of results adds almost nothing to GC work.
+ * <p>
+ * Removing a row moves the last row into its place.
+ */
+public class OffHeapResultColumns implements ResultStore
+{
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int HEADER_BYTES = 8; // riderId and width
+
+    // Attributes
+    private transient ByteBuffer records;
+    private int capacity; // In rows
+    private int stride; // Checkpoints per record
+    private int recordBytes;
+    private IntLongMap rowsByRider;
+    private int size;
+
+    public OffHeapResultColumns()
+    {
+        this.rowsByRider = new IntLongMap();
+        this.allocate(DEFAULT_CAPACITY, 0);
+    }
+
+    @Override
+    public ResultStorage getStorage()
+    {
+        return ResultStorage.OFF_HEAP;
+    }
+
+    @Override
+    public int size()
+    {
+        return this.size;
+    }
+
+    @Override
+    public boolean contains(int riderId)
+    {
+        return this.rowsByRider.containsKey(riderId);
+    }
+
+    @Override
+    public int getRow(int riderId)
+    {
+        return (int)this.rowsByRider.getOrDefault(riderId, -1);
+    }
+
+    @Override
+    public int getRiderId(int row)
+    {
+        return this.records.getInt(row * this.recordBytes);
+    }
+
+    @Override
+    public int getWidth(int row)
+    {
+        return this.records.getInt(row * this.recordBytes + 4);
+    }
+
+    @Override
+    public long getNanos(int row, int checkpoint)
+    {
+        return this.records.getLong(row * this.recordBytes + HEADER_BYTES + checkpoint * 8);
+    }
+
+    @Override
+    public long getFinishNanos(int row)
+    {
+        return this.getNanos(row, this.getWidth(row) - 1);
+    }
+
+    @Override
+    public LocalTime[] getCheckpoints(int riderId)
+    {
+        int row = this.getRow(riderId);
+        if (row == -1)
+        {
+            return null;
+        }
+
+        LocalTime[] checkpoints = new LocalTime[this.getWidth(row)];
+        for (int i=0; i<checkpoints.length; i++)
+        {
+            checkpoints[i] = LocalTime.ofNanoOfDay(this.getNanos(row, i));
+        }
+        return checkpoints;
+    }
+
+    @Override
+    public void add(int riderId, LocalTime... checkpoints)
+    {
+        if (this.size == this.capacity || checkpoints.length > this.stride)
+        {
+            int capacity = this.size == this.capacity ? this.capacity * 2 : this.capacity;
+            this.allocate(capacity, Math.max(this.stride, checkpoints.length));
+        }
+
+        int row = this.size++;
+        int offset = row * this.recordBytes;
+        this.records.putInt(offset, riderId);
+        this.records.putInt(offset + 4, checkpoints.length);
+        for (int i=0; i<checkpoints.length; i++)
+        {
+            this.records.putLong(offset + HEADER_BYTES + i * 8, checkpoints[i].toNanoOfDay());
+        }
+        this.rowsByRider.put(riderId, row);
+    }
+
+    @Override
+    public boolean remove(int riderId)
+    {
+        int row = this.getRow(riderId);
+        if (row == -1)
+        {
+            return false;
+        }
+
+        // Fill the gap with the last record.
+        int last = --this.size;
+        if (row != last)
+        {
+            int from = last * this.recordBytes;
+            int to = row * this.recordBytes;
+            for (int i=0; i<this.recordBytes; i+=4)
+            {
+                this.records.putInt(to + i, this.records.getInt(from + i));
+            }
+            this.rowsByRider.put(this.getRiderId(row), row);
+        }
+        this.rowsByRider.remove(riderId);
+        return true;
+    }
+
+    private void allocate(int capacity, int stride)
+    {
+        // Copies the existing records into a new buffer; the old buffer's memory is
+        // released once the buffer object itself is collected.
+        int recordBytes = HEADER_BYTES + stride * 8;
+        ByteBuffer records = ByteBuffer.allocateDirect(capacity * recordBytes).order(ByteOrder.nativeOrder());
+        for (int row=0; row<this.size; row++)
+        {
+            int width = this.getWidth(row);
+            records.putInt(row * recordBytes, this.getRiderId(row));
+            records.putInt(row * recordBytes + 4, width);
+            for (int i=0; i<width; i++)
+            {
+                records.putLong(row * recordBytes + HEADER_BYTES + i * 8, this.getNanos(row, i));
+            }
+        }
+        this.records = records;
+        this.capacity = capacity;
+        this.stride = stride;
+        this.recordBytes = recordBytes;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        // Direct buffers aren't serializable, so the records are written out one value at a time.
+        out.defaultWriteObject();
+        for (int row=0; row<this.size; row++)
+        {
+            int width = this.getWidth(row);
+            out.writeInt(this.getRiderId(row));
+            out.writeInt(width);
+            for (int i=0; i<width; i++)
+            {
+                out.writeLong(this.getNanos(row, i));
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        this.records = ByteBuffer.allocateDirect(this.capacity * this.recordBytes).order(ByteOrder.nativeOrder());
+        for (int row=0; row<this.size; row++)
+        {
+            int offset = row * this.recordBytes;
+            this.records.putInt(offset, in.readInt());
+            int width = in.readInt();
+            this.records.putInt(offset + 4, width);
+            for (int i=0; i<width; i++)
+            {
+                this.records.putLong(offset + HEADER_BYTES + i * 8, in.readLong());
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package cycling;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.EnumMap;
 
 public class Race implements Serializable
 {
@@ -8,13 +10,36 @@ public class Race implements Serializable
     private int id;
     private String name;
     private String description;
-    private static int numberOfRaces;
+    private ArrayList<Integer> orderedStages;
+    private ScoringScheme scoringScheme;
+    private volatile long version; // Incremented whenever a stage, segment, result or the scoring scheme of the race changes
+    private static final long NANOS_PER_MILLI = 1_000_000L;
 
-    public Race(String name, String description)
+    // Running totals of the riders' adjusted times, brought up to date on each read.
+    // Readers may share a race between threads, so the methods that build or change them are synchronized.
+    private transient IntLongMap adjustedTotals; // In nanoseconds
+    private transient IntLongMap stageCounts; // Number of stages each rider in adjustedTotals has a result in
+    private transient IntLongMap appliedVersions; // Version of each stage counted in adjustedTotals
+    private transient IntObjectMap<int[]> appliedRiders;
+    private transient IntObjectMap<long[]> appliedTimes;
+
+    // The riders sorted by their totals, rebuilt on the first read after the totals change
+    private transient int[] classifiedRiders;
+    private transient long[] classifiedTimes;
+    private transient long[] classifiedGapMillis;
+    private transient IntLongMap classificationRanks;
+
+    // Classifications of the race as of one version. The cache is replaced rather than changed, so it can be
+    // read without a lock while another thread caches a classification or changes the race.
+    private transient volatile ClassificationCache cache;
+
+    public Race(int id, String name, String description)
     {
+        this.id = id;
         this.name = name;
         this.description = description;
-        this.id = ++numberOfRaces;
+        this.orderedStages = new ArrayList<Integer>();
+        this.scoringScheme = ScoringScheme.getDefault();
     }
 
     public int getId()
@@ -47,8 +72,225 @@ public class Race implements Serializable
         this.description = description;
     }
 
-    public static int getNumberOfRaces()
+    public ScoringScheme getScoringScheme()
+    {
+        // Races saved before scoring schemes existed use the default scheme.
+        return this.scoringScheme != null ? this.scoringScheme : ScoringScheme.getDefault();
+    }
+
+    public void setScoringScheme(ScoringScheme scoringScheme)
+    {
+        this.scoringScheme = scoringScheme;
+        this.version++;
+    }
+
+    public ArrayList<Integer> getStages()
+    {
+        return this.orderedStages;
+    }
+
+    public void addStage(int stageId)
+    {
+        this.orderedStages.add(stageId);
+        this.version++;
+    }
+
+    public synchronized void removeStage(int stageId)
+    {
+        this.orderedStages.remove(Integer.valueOf(stageId));
+        this.version++;
+        if (this.adjustedTotals != null)
+        {
+            this.unapplyStage(stageId);
+        }
+    }
+
+    public long getVersion()
+    {
+        return this.version;
+    }
+
+    public synchronized void incrementVersion()
+    {
+        // Results for different stages of the race may be registered at the same time.
+        this.version++;
+    }
+
+    public int[] getCachedClassification(RaceClassification classification)
+    {
+        // The cached classification, or null if there is none for the current version
+        ClassificationCache cache = this.getCurrentCache();
+        return cache != null ? cache.classifications.get(classification) : null;
+    }
+
+    public synchronized void cacheClassification(RaceClassification classification, int[] riders)
+    {
+        // Caches a classification for the current version; the array must not be changed afterwards.
+        ClassificationCache cache = this.getCurrentCache();
+        EnumMap<RaceClassification, int[]> classifications = cache != null
+            ? new EnumMap<RaceClassification, int[]>(cache.classifications)
+            : new EnumMap<RaceClassification, int[]>(RaceClassification.class);
+        classifications.put(classification, riders);
+        this.cache = new ClassificationCache(this.version, classifications,
+            cache != null ? cache.teamClassification : null);
+    }
+
+    public TeamClassification getCachedTeamClassification()
+    {
+        // The cached team classification, or null if there is none for the current version
+        ClassificationCache cache = this.getCurrentCache();
+        return cache != null ? cache.teamClassification : null;
+    }
+
+    public synchronized void cacheTeamClassification(TeamClassification teamClassification)
     {
-        return numberOfRaces;
+        // Caches the team classification for the current version.
+        ClassificationCache cache = this.getCurrentCache();
+        EnumMap<RaceClassification, int[]> classifications = cache != null
+            ? cache.classifications
+            : new EnumMap<RaceClassification, int[]>(RaceClassification.class);
+        this.cache = new ClassificationCache(this.version, classifications, teamClassification);
+    }
+
+    private ClassificationCache getCurrentCache()
+    {
+        // The cache, or null if the race has changed since it was made.
+        ClassificationCache cache = this.cache;
+        return cache != null && cache.version == this.version ? cache : null;
+    }
+
+    public synchronized IntLongMap getAdjustedTotals(ArrayList<Stage> stages)
+    {
+        // Total adjusted time of each rider over the given stages (the stages of this race).
+        // Only the stages whose results have changed since the last call are re-read.
+        if (this.adjustedTotals == null)
+        {
+            this.adjustedTotals = new IntLongMap();
+            this.stageCounts = new IntLongMap();
+            this.appliedVersions = new IntLongMap();
+            this.appliedRiders = new IntObjectMap<int[]>();
+            this.appliedTimes = new IntObjectMap<long[]>();
+        }
+
+        for (Stage stage : stages)
+        {
+            if (this.appliedVersions.getOrDefault(stage.getId(), -1) != stage.getVersion())
+            {
+                this.unapplyStage(stage.getId());
+
+                // The stage replaces these arrays rather than changing them, so they can be kept as they are.
+                int[] riders = stage.getRanking();
+                long[] times = stage.getRankedAdjustedTimes();
+                for (int i=0; i<riders.length; i++)
+                {
+                    this.adjustedTotals.addTo(riders[i], times[i]);
+                    this.stageCounts.addTo(riders[i], 1);
+                }
+                this.appliedRiders.put(stage.getId(), riders);
+                this.appliedTimes.put(stage.getId(), times);
+                this.appliedVersions.put(stage.getId(), stage.getVersion());
+                this.classifiedRiders = null;
+            }
+        }
+        return this.adjustedTotals;
+    }
+
+    // The classification below is of the totals as of the last call to getAdjustedTotals.
+    // Its arrays are shared with the cache, so callers must copy them before handing them out.
+
+    public int[] getClassification()
+    {
+        // Rider IDs sorted by total adjusted time
+        this.updateClassification();
+        return this.classifiedRiders;
+    }
+
+    public long[] getClassificationTimes()
+    {
+        // Total adjusted times in nanoseconds, in the order of getClassification()
+        this.updateClassification();
+        return this.classifiedTimes;
+    }
+
+    public long[] getClassificationGapMillis()
+    {
+        // Gaps between each total and the leader's, in milliseconds, in the order of getClassification()
+        this.updateClassification();
+        return this.classifiedGapMillis;
+    }
+
+    public int getClassificationRank(int riderId)
+    {
+        // Index of the rider in getClassification(), or -1 if they have no result in this race
+        this.updateClassification();
+        return (int)this.classificationRanks.getOrDefault(riderId, -1);
+    }
+
+    private synchronized void updateClassification()
+    {
+        if (this.classifiedRiders != null)
+        {
+            return;
+        }
+
+        int[] riders = this.adjustedTotals.keys();
+        long[] times = new long[riders.length];
+        for (int i=0; i<riders.length; i++)
+        {
+            times[i] = this.adjustedTotals.getOrDefault(riders[i], 0);
+        }
+        Ranking.sort(times, riders, riders.length);
+
+        IntLongMap ranks = new IntLongMap(riders.length);
+        long[] gapMillis = new long[riders.length];
+        for (int rank=0; rank<riders.length; rank++)
+        {
+            ranks.put(riders[rank], rank);
+            gapMillis[rank] = (times[rank] - times[0]) / NANOS_PER_MILLI;
+        }
+        this.classifiedRiders = riders;
+        this.classifiedTimes = times;
+        this.classifiedGapMillis = gapMillis;
+        this.classificationRanks = ranks;
+    }
+
+    private void unapplyStage(int stageId)
+    {
+        // Takes the times of the stage back out of the totals, if they were counted.
+        int[] riders = this.appliedRiders.remove(stageId);
+        long[] times = this.appliedTimes.remove(stageId);
+        this.appliedVersions.remove(stageId);
+        if (riders == null)
+        {
+            return;
+        }
+        this.classifiedRiders = null;
+
+        for (int i=0; i<riders.length; i++)
+        {
+            this.adjustedTotals.addTo(riders[i], -times[i]);
+            if (this.stageCounts.addTo(riders[i], -1) == 0)
+            {
+                // The rider has no results left in this race.
+                this.adjustedTotals.remove(riders[i]);
+                this.stageCounts.remove(riders[i]);
+            }
+        }
+    }
+
+    private static final class ClassificationCache
+    {
+        // Never changed once made; cacheClassification makes a new one with the extra classification.
+        private final long version;
+        private final EnumMap<RaceClassification, int[]> classifications;
+        private final TeamClassification teamClassification;
+
+        private ClassificationCache(long version, EnumMap<RaceClassification, int[]> classifications,
+            TeamClassification teamClassification)
+        {
+            this.version = version;
+            this.classifications = classifications;
+            this.teamClassification = teamClassification;
+        }
     }
 }
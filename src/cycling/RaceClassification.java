@@ -0,0 +1,13 @@
+package cycling;
+
+/**
+ * The classifications of a race that a race caches until something in it
+ * changes. Each is named after the portal method that returns it.
+ */
+public enum RaceClassification {
+    GENERAL_CLASSIFICATION_RANK, // getRidersGeneralClassificationRank
+    POINTS, // getRidersPointsInRace
+    MOUNTAIN_POINTS, // getRidersMountainPointsInRace
+    POINT_CLASSIFICATION_RANK, // getRidersPointClassificationRank
+    MOUNTAIN_POINT_CLASSIFICATION_RANK; // getRidersMountainPointClassificationRank
+}
@@ -0,0 +1,256 @@
+package cycling;
+
+/**
+ * Sorting for rankings. A ranking is held as two parallel arrays: a long
+ * key per rider (a time in nanoseconds, or negated points) and the
+ * rider's ID. Riders are ordered by ascending key, and riders with equal
+ * keys by ascending ID, so every ranking is deterministic.
+ */
+public final class Ranking
+{
+    // Ranges this short are insertion sorted rather than merged.
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+    // Fields this large are radix sorted rather than merged; RankingBenchmark measures the crossover.
+    static final int RADIX_SORT_THRESHOLD = 1 << 10;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int DIGITS = 12; // 4 digits of ID, then 8 digits of key
+
+    private Ranking()
+    {
+    }
+
+    /**
+     * Sorts the first n entries of the parallel arrays by (key, ID). Large fields are
+     * radix sorted in O(n); smaller ones are merge sorted.
+     *
+     * @param keys The sort keys.
+     * @param ids The rider IDs, moved along with their keys.
+     * @param n The number of entries to sort.
+     */
+    public static void sort(long[] keys, int[] ids, int n)
+    {
+        if (n <= INSERTION_SORT_THRESHOLD)
+        {
+            insertionSort(keys, ids, 0, n);
+            return;
+        }
+        if (n >= RADIX_SORT_THRESHOLD)
+        {
+            radixSort(keys, ids, n);
+            return;
+        }
+        long[] keyBuffer = new long[n];
+        int[] idBuffer = new int[n];
+        mergeSort(keys, ids, keyBuffer, idBuffer, 0, n);
+    }
+
+    /**
+     * Moves the k best of the first n entries of the parallel arrays to the front, in order.
+     * A bounded heap is used, so this takes O(n log k) rather than the O(n log n) of a full sort.
+     *
+     * @param keys The sort keys.
+     * @param ids The rider IDs, moved along with their keys.
+     * @param n The number of entries to choose from.
+     * @param k The number of entries wanted.
+     * @return The number of entries at the front of the arrays, which is min(n, k).
+     */
+    public static int top(long[] keys, int[] ids, int n, int k)
+    {
+        k = Math.max(0, Math.min(n, k));
+        if (k == 0)
+        {
+            return 0;
+        }
+
+        // The front k entries form a heap with the worst of them at the root.
+        for (int i=k/2-1; i>=0; i--)
+        {
+            siftDown(keys, ids, i, k);
+        }
+        for (int i=k; i<n; i++)
+        {
+            if (compare(keys[i], ids[i], keys[0], ids[0]) < 0)
+            {
+                // Better than the worst kept entry; replace it.
+                long key = keys[0];
+                int id = ids[0];
+                keys[0] = keys[i];
+                ids[0] = ids[i];
+                keys[i] = key;
+                ids[i] = id;
+                siftDown(keys, ids, 0, k);
+            }
+        }
+
+        sort(keys, ids, k);
+        return k;
+    }
+
+    /**
+     * Compares two (key, ID) pairs.
+     *
+     * @param keyA The key of the first pair.
+     * @param idA The rider ID of the first pair.
+     * @param keyB The key of the second pair.
+     * @param idB The rider ID of the second pair.
+     * @return A negative number, zero or a positive number as the first pair ranks
+     *         before, equal to or after the second.
+     */
+    public static int compare(long keyA, int idA, long keyB, int idB)
+    {
+        if (keyA != keyB)
+        {
+            return keyA < keyB ? -1 : 1;
+        }
+        return Integer.compare(idA, idB);
+    }
+
+    // mergeSort and radixSort are package-private so that RankingBenchmark can time each on its own.
+
+    static void mergeSort(long[] keys, int[] ids, long[] keyBuffer, int[] idBuffer, int from, int to)
+    {
+        if (to - from <= INSERTION_SORT_THRESHOLD)
+        {
+            insertionSort(keys, ids, from, to);
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        mergeSort(keys, ids, keyBuffer, idBuffer, from, middle);
+        mergeSort(keys, ids, keyBuffer, idBuffer, middle, to);
+        if (compare(keys[middle - 1], ids[middle - 1], keys[middle], ids[middle]) <= 0)
+        {
+            // Already in order.
+            return;
+        }
+
+        System.arraycopy(keys, from, keyBuffer, from, to - from);
+        System.arraycopy(ids, from, idBuffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i=from; i<to; i++)
+        {
+            if (right >= to || (left < middle
+                && compare(keyBuffer[left], idBuffer[left], keyBuffer[right], idBuffer[right]) <= 0))
+            {
+                keys[i] = keyBuffer[left];
+                ids[i] = idBuffer[left++];
+            }
+            else
+            {
+                keys[i] = keyBuffer[right];
+                ids[i] = idBuffer[right++];
+            }
+        }
+    }
+
+    static void radixSort(long[] keys, int[] ids, int n)
+    {
+        // LSD radix sort over the (key, ID) pair as one 96-bit number: the ID's digits are sorted first,
+        // as the least significant. Each pass is stable, so ties in key stay ordered by ID.
+        int[][] counts = new int[DIGITS][RADIX];
+        for (int i=0; i<n; i++)
+        {
+            for (int digit=0; digit<DIGITS; digit++)
+            {
+                counts[digit][digit(keys[i], ids[i], digit)]++;
+            }
+        }
+
+        long[] sourceKeys = keys;
+        int[] sourceIds = ids;
+        long[] targetKeys = new long[n];
+        int[] targetIds = new int[n];
+        for (int digit=0; digit<DIGITS; digit++)
+        {
+            int[] count = counts[digit];
+            if (count[digit(sourceKeys[0], sourceIds[0], digit)] == n)
+            {
+                // Every entry has the same value of this digit (e.g. the high bytes of small IDs).
+                continue;
+            }
+
+            // Turn the counts into the first index of each bucket.
+            int offset = 0;
+            for (int bucket=0; bucket<RADIX; bucket++)
+            {
+                int bucketSize = count[bucket];
+                count[bucket] = offset;
+                offset += bucketSize;
+            }
+            for (int i=0; i<n; i++)
+            {
+                int index = count[digit(sourceKeys[i], sourceIds[i], digit)]++;
+                targetKeys[index] = sourceKeys[i];
+                targetIds[index] = sourceIds[i];
+            }
+
+            long[] swapKeys = sourceKeys;
+            int[] swapIds = sourceIds;
+            sourceKeys = targetKeys;
+            sourceIds = targetIds;
+            targetKeys = swapKeys;
+            targetIds = swapIds;
+        }
+
+        if (sourceKeys != keys)
+        {
+            System.arraycopy(sourceKeys, 0, keys, 0, n);
+            System.arraycopy(sourceIds, 0, ids, 0, n);
+        }
+    }
+
+    private static int digit(long key, int id, int digit)
+    {
+        // The sign bits are flipped, so that negative values (e.g. negated points) sort before positive ones.
+        if (digit < 4)
+        {
+            return ((id ^ Integer.MIN_VALUE) >>> (digit * RADIX_BITS)) & (RADIX - 1);
+        }
+        return (int)((key ^ Long.MIN_VALUE) >>> ((digit - 4) * RADIX_BITS)) & (RADIX - 1);
+    }
+
+    private static void siftDown(long[] keys, int[] ids, int parent, int size)
+    {
+        // Restores the heap below parent, where each parent ranks after both of its children.
+        long key = keys[parent];
+        int id = ids[parent];
+        int child = 2 * parent + 1;
+        while (child < size)
+        {
+            if (child + 1 < size && compare(keys[child + 1], ids[child + 1], keys[child], ids[child]) > 0)
+            {
+                child++;
+            }
+            if (compare(keys[child], ids[child], key, id) <= 0)
+            {
+                break;
+            }
+            keys[parent] = keys[child];
+            ids[parent] = ids[child];
+            parent = child;
+            child = 2 * parent + 1;
+        }
+        keys[parent] = key;
+        ids[parent] = id;
+    }
+
+    private static void insertionSort(long[] keys, int[] ids, int from, int to)
+    {
+        for (int i=from+1; i<to; i++)
+        {
+            long key = keys[i];
+            int id = ids[i];
+            int j = i - 1;
+            while (j >= from && compare(keys[j], ids[j], key, id) > 0)
+            {
+                keys[j + 1] = keys[j];
+                ids[j + 1] = ids[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            ids[j + 1] = id;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package cycling;
+
+import java.util.Random;
+
+/**
+ * Times the merge sort and the radix sort of {@link Ranking} against each
+ * other over a range of field sizes, to find where the radix sort starts
+ * to win (the crossover that RADIX_SORT_THRESHOLD is set from). Run it
+ * again on new hardware or JVMs before changing the threshold:
+ * <pre>
+ *     java -cp bin cycling.RankingBenchmark [rounds]
+ * </pre>
+ * Each size is sorted on three kinds of key: stage-like finishing times,
+ * negated points (few distinct keys, so many ties) and random 64-bit
+ * keys. The time printed is the best of the rounds (5 by default), in
+ * microseconds per sort, and both sorts are checked to give the same order.
+ */
+public final class RankingBenchmark
+{
+    private static final int[] SIZES = {256, 512, 768, 1024, 1536, 2048, 4096, 16384, 65536, 262144, 1048576};
+    private static final String[] KEY_KINDS = {"times", "points", "random"};
+    // Roughly how many entries each timed batch sorts, so that small sizes are repeated enough to time.
+    private static final int ENTRIES_PER_BATCH = 4_000_000;
+
+    private RankingBenchmark()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Random random = new Random(16);
+
+        System.out.printf("Radix sort threshold: %d%n", Ranking.RADIX_SORT_THRESHOLD);
+        System.out.printf("%-7s %8s %12s %12s %7s%n", "keys", "n", "merge (us)", "radix (us)", "ratio");
+        for (String keyKind : KEY_KINDS)
+        {
+            for (int n : SIZES)
+            {
+                long[] keys = new long[n];
+                int[] ids = new int[n];
+                fill(keys, ids, keyKind, random);
+                checkSameOrder(keys, ids);
+
+                int repetitions = Math.max(3, ENTRIES_PER_BATCH / n);
+                double mergeMicros = time(keys, ids, repetitions, rounds, false);
+                double radixMicros = time(keys, ids, repetitions, rounds, true);
+                System.out.printf("%-7s %8d %12.1f %12.1f %7.2f%n",
+                    keyKind, n, mergeMicros, radixMicros, mergeMicros / radixMicros);
+            }
+        }
+    }
+
+    private static void fill(long[] keys, int[] ids, String keyKind, Random random)
+    {
+        for (int i=0; i<keys.length; i++)
+        {
+            switch (keyKind)
+            {
+                case "times":
+                    // Finishing times between one and two hours, to the millisecond.
+                    keys[i] = 3_600_000_000_000L + random.nextInt(3_600_000) * 1_000_000L;
+                    break;
+                case "points":
+                    keys[i] = -random.nextInt(50);
+                    break;
+                default:
+                    keys[i] = random.nextLong();
+                    break;
+            }
+            ids[i] = i + 1;
+        }
+    }
+
+    private static void checkSameOrder(long[] keys, int[] ids)
+    {
+        int n = keys.length;
+        long[] mergeKeys = keys.clone();
+        int[] mergeIds = ids.clone();
+        long[] radixKeys = keys.clone();
+        int[] radixIds = ids.clone();
+        Ranking.mergeSort(mergeKeys, mergeIds, new long[n], new int[n], 0, n);
+        Ranking.radixSort(radixKeys, radixIds, n);
+        for (int i=0; i<n; i++)
+        {
+            if (mergeKeys[i] != radixKeys[i] || mergeIds[i] != radixIds[i])
+            {
+                throw new IllegalStateException("Merge and radix sorts disagree at position " + i + " of " + n + ".");
+            }
+        }
+    }
+
+    private static double time(long[] keys, int[] ids, int repetitions, int rounds, boolean radix)
+    {
+        // The best of the rounds, so that JIT compilation and GC pauses in early rounds don't count.
+        int n = keys.length;
+        long best = Long.MAX_VALUE;
+        for (int round=0; round<rounds; round++)
+        {
+            long start = System.nanoTime();
+            for (int repetition=0; repetition<repetitions; repetition++)
+            {
+                long[] sortedKeys = keys.clone();
+                int[] sortedIds = ids.clone();
+                if (radix)
+                {
+                    Ranking.radixSort(sortedKeys, sortedIds, n);
+                }
+                else
+                {
+                    Ranking.mergeSort(sortedKeys, sortedIds, new long[n], new int[n], 0, n);
+                }
+            }
+            best = Math.min(best, (System.nanoTime() - start) / repetitions);
+        }
+        return best / 1e3;
+    }
+}
@@ -0,0 +1,172 @@
+package cycling;
+
+import java.time.LocalTime;
+
+/**
+ * Columnar storage for the rider results of a stage, on the Java heap.
+ * Each row is one rider's result: the rider ID is held in an int column,
+ * and each checkpoint time is held as nanoseconds of the day in a long
+ * column of its own. LocalTime objects are only created when a result is
+ * read back through {@link #getCheckpoints(int)}.
+ * <p>
+ * Removing a row moves the last row into its place.
+ */
+public class ResultColumns implements ResultStore
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Attributes
+    private int[] riderIds;
+    private int[] widths; // Number of checkpoints in each row
+    private long[][] columns; // columns[checkpoint][row]
+    private IntLongMap rowsByRider;
+    private int size;
+
+    public ResultColumns()
+    {
+        this.riderIds = new int[DEFAULT_CAPACITY];
+        this.widths = new int[DEFAULT_CAPACITY];
+        this.columns = new long[0][];
+        this.rowsByRider = new IntLongMap();
+    }
+
+    @Override
+    public ResultStorage getStorage()
+    {
+        return ResultStorage.HEAP;
+    }
+
+    @Override
+    public int size()
+    {
+        return this.size;
+    }
+
+    @Override
+    public boolean contains(int riderId)
+    {
+        return this.rowsByRider.containsKey(riderId);
+    }
+
+    @Override
+    public int getRow(int riderId)
+    {
+        return (int)this.rowsByRider.getOrDefault(riderId, -1);
+    }
+
+    @Override
+    public int getRiderId(int row)
+    {
+        return this.riderIds[row];
+    }
+
+    @Override
+    public int getWidth(int row)
+    {
+        return this.widths[row];
+    }
+
+    @Override
+    public long getNanos(int row, int checkpoint)
+    {
+        return this.columns[checkpoint][row];
+    }
+
+    @Override
+    public long getFinishNanos(int row)
+    {
+        return this.columns[this.widths[row] - 1][row];
+    }
+
+    @Override
+    public LocalTime[] getCheckpoints(int riderId)
+    {
+        int row = this.getRow(riderId);
+        if (row == -1)
+        {
+            return null;
+        }
+
+        LocalTime[] checkpoints = new LocalTime[this.widths[row]];
+        for (int i=0; i<checkpoints.length; i++)
+        {
+            checkpoints[i] = LocalTime.ofNanoOfDay(this.columns[i][row]);
+        }
+        return checkpoints;
+    }
+
+    @Override
+    public void add(int riderId, LocalTime... checkpoints)
+    {
+        if (this.size == this.riderIds.length)
+        {
+            this.grow(this.riderIds.length * 2);
+        }
+        if (checkpoints.length > this.columns.length)
+        {
+            this.widen(checkpoints.length);
+        }
+
+        int row = this.size++;
+        this.riderIds[row] = riderId;
+        this.widths[row] = checkpoints.length;
+        for (int i=0; i<checkpoints.length; i++)
+        {
+            this.columns[i][row] = checkpoints[i].toNanoOfDay();
+        }
+        this.rowsByRider.put(riderId, row);
+    }
+
+    @Override
+    public boolean remove(int riderId)
+    {
+        int row = this.getRow(riderId);
+        if (row == -1)
+        {
+            return false;
+        }
+
+        // Fill the gap with the last row.
+        int last = --this.size;
+        if (row != last)
+        {
+            this.riderIds[row] = this.riderIds[last];
+            this.widths[row] = this.widths[last];
+            for (int i=0; i<this.widths[last]; i++)
+            {
+                this.columns[i][row] = this.columns[i][last];
+            }
+            this.rowsByRider.put(this.riderIds[row], row);
+        }
+        this.rowsByRider.remove(riderId);
+        return true;
+    }
+
+    private void grow(int capacity)
+    {
+        int[] riderIds = new int[capacity];
+        int[] widths = new int[capacity];
+        System.arraycopy(this.riderIds, 0, riderIds, 0, this.size);
+        System.arraycopy(this.widths, 0, widths, 0, this.size);
+        this.riderIds = riderIds;
+        this.widths = widths;
+        for (int i=0; i<this.columns.length; i++)
+        {
+            long[] column = new long[capacity];
+            System.arraycopy(this.columns[i], 0, column, 0, this.size);
+            this.columns[i] = column;
+        }
+    }
+
+    private void widen(int width)
+    {
+        // Checkpoint columns are only created once a row needs them.
+        long[][] columns = new long[width][];
+        System.arraycopy(this.columns, 0, columns, 0, this.columns.length);
+        for (int i=this.columns.length; i<width; i++)
+        {
+            columns[i] = new long[this.riderIds.length];
+        }
+        this.columns = columns;
+    }
+}
@@ -0,0 +1,21 @@
+package cycling;
+
+/**
+ * Where a portal's stages keep their rider results.
+ */
+public enum ResultStorage {
+    HEAP, // Primitive columns on the Java heap (ResultColumns)
+    OFF_HEAP; // Fixed-width records in direct memory (OffHeapResultColumns)
+
+    /**
+     * @return A new, empty result store of this kind.
+     */
+    public ResultStore newStore()
+    {
+        if (this == OFF_HEAP)
+        {
+            return new OffHeapResultColumns();
+        }
+        return new ResultColumns();
+    }
+}
@@ -0,0 +1,86 @@
+package cycling;
+
+import java.io.Serializable;
+import java.time.LocalTime;
+
+/**
+ * Storage for the rider results of a stage. Each result is one row, made
+ * up of the rider's ID and their checkpoint times as nanoseconds of the
+ * day. Rows are not kept in any particular order, and removing a result
+ * may move another result into its row.
+ */
+public interface ResultStore extends Serializable
+{
+    /**
+     * @return The kind of storage backing this store.
+     */
+    ResultStorage getStorage();
+
+    /**
+     * @return The number of results (rows) in the store.
+     */
+    int size();
+
+    /**
+     * @param riderId The ID of the rider.
+     * @return Whether or not the rider has a result.
+     */
+    boolean contains(int riderId);
+
+    /**
+     * Returns the row holding a rider's result.
+     *
+     * @param riderId The ID of the rider.
+     * @return The row, or -1 if the rider has no result.
+     */
+    int getRow(int riderId);
+
+    /**
+     * @param row The row.
+     * @return The ID of the rider whose result is in the row.
+     */
+    int getRiderId(int row);
+
+    /**
+     * @param row The row.
+     * @return The number of checkpoint times in the row.
+     */
+    int getWidth(int row);
+
+    /**
+     * @param row The row.
+     * @param checkpoint The index of the checkpoint.
+     * @return The checkpoint time, as nanoseconds of the day.
+     */
+    long getNanos(int row, int checkpoint);
+
+    /**
+     * @param row The row.
+     * @return The last checkpoint time of the row, as nanoseconds of the day.
+     */
+    long getFinishNanos(int row);
+
+    /**
+     * Returns a rider's checkpoint times.
+     *
+     * @param riderId The ID of the rider.
+     * @return The checkpoint times, or null if the rider has no result.
+     */
+    LocalTime[] getCheckpoints(int riderId);
+
+    /**
+     * Adds a result for a rider who has none.
+     *
+     * @param riderId The ID of the rider.
+     * @param checkpoints The checkpoint times.
+     */
+    void add(int riderId, LocalTime... checkpoints);
+
+    /**
+     * Removes a rider's result.
+     *
+     * @param riderId The ID of the rider.
+     * @return Whether or not the rider had a result.
+     */
+    boolean remove(int riderId);
+}
@@ -10,15 +10,14 @@ public class Rider implements Serializable
     private int raceId;
     private String name;
     private int yearOfBirth;
-    private static int numberOfRiders; // Starts 0
 
-    public Rider(int teamId, int raceId, String name, int yearOfBirth)
+    public Rider(int id, int teamId, int raceId, String name, int yearOfBirth)
     {
+        this.id = id;
         this.teamId = teamId;
         this.raceId = raceId;
         this.name = name;
         this.yearOfBirth = yearOfBirth;
-        this.id = ++numberOfRiders;
     }
 
     public int getId()
@@ -70,9 +69,4 @@ public class Rider implements Serializable
     {
         this.yearOfBirth = yearOfBirth;
     }
-
-    public static int getNumberOfRiders()
-    {
-        return numberOfRiders;
-    }
 }
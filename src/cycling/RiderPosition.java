@@ -0,0 +1,54 @@
+package cycling;
+
+import java.time.Duration;
+import java.time.LocalTime;
+
+/**
+ * Where a rider stands in a stage or race classification: their rank,
+ * their (adjusted) time, and how far that time is behind the leader's.
+ * Times are held in nanoseconds, so race totals of a day or more are exact.
+ */
+public class RiderPosition
+{
+    private static final long NANOS_PER_DAY = LocalTime.MAX.toNanoOfDay() + 1;
+
+    // Attributes
+    private final int riderId;
+    private final int rank; // Index in the classification; 0 is the leader
+    private final long timeNanos;
+    private final long gapNanos;
+
+    public RiderPosition(int riderId, int rank, long timeNanos, long gapNanos)
+    {
+        this.riderId = riderId;
+        this.rank = rank;
+        this.timeNanos = timeNanos;
+        this.gapNanos = gapNanos;
+    }
+
+    public int getRiderId()
+    {
+        return this.riderId;
+    }
+
+    public int getRank()
+    {
+        return this.rank;
+    }
+
+    public long getTimeNanos()
+    {
+        return this.timeNanos;
+    }
+
+    public LocalTime getTime()
+    {
+        // Wraps at midnight, as the portal's LocalTime results do
+        return LocalTime.ofNanoOfDay(this.timeNanos % NANOS_PER_DAY);
+    }
+
+    public Duration getGap()
+    {
+        return Duration.ofNanos(this.gapNanos);
+    }
+}
@@ -0,0 +1,135 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The points a race awards for finishing positions in each type of stage
+ * and for passing positions in each type of segment. The tables are
+ * compiled into flat rows indexed by the type's ordinal and zero-padded
+ * to a common width, so looking up the points of any rank is one bounds
+ * check and one array read, and ranks past the end of a table score 0.
+ * <p>
+ * Schemes are immutable; a race uses the default scheme unless it is
+ * given another.
+ */
+public class ScoringScheme implements Serializable
+{
+    private static final ScoringScheme DEFAULT_SCHEME = createDefault();
+
+    // Attributes
+    private final int[][] stagePoints; // stagePoints[type ordinal][rank]
+    private final int[][] segmentPoints; // segmentPoints[type ordinal][rank]
+    private final int[] segmentScorers; // Number of ranks that score in each type of segment
+    private final int stageWidth;
+    private final int segmentWidth;
+
+    /**
+     * Compiles a scoring scheme. Types missing from a table award no points.
+     *
+     * @param stagePoints The points for each finishing position (from first), by stage type.
+     * @param segmentPoints The points for each passing position (from first), by segment type.
+     * @throws IllegalArgumentException If a table is null or holds negative points.
+     */
+    public ScoringScheme(Map<StageType, int[]> stagePoints, Map<SegmentType, int[]> segmentPoints)
+    {
+        if (stagePoints == null || segmentPoints == null)
+        {
+            throw new IllegalArgumentException("Points tables cannot be null.");
+        }
+
+        this.stageWidth = width(stagePoints);
+        this.segmentWidth = width(segmentPoints);
+        this.stagePoints = new int[StageType.values().length][this.stageWidth];
+        this.segmentPoints = new int[SegmentType.values().length][this.segmentWidth];
+        this.segmentScorers = new int[SegmentType.values().length];
+        for (Map.Entry<StageType, int[]> entry : stagePoints.entrySet())
+        {
+            copyRow(entry.getValue(), this.stagePoints[entry.getKey().ordinal()]);
+        }
+        for (Map.Entry<SegmentType, int[]> entry : segmentPoints.entrySet())
+        {
+            copyRow(entry.getValue(), this.segmentPoints[entry.getKey().ordinal()]);
+            this.segmentScorers[entry.getKey().ordinal()] = entry.getValue().length;
+        }
+    }
+
+    public static ScoringScheme getDefault()
+    {
+        return DEFAULT_SCHEME;
+    }
+
+    public int getStagePoints(StageType type, int rank)
+    {
+        // Points for finishing a stage of the type in the given position (0 is first)
+        return rank < this.stageWidth ? this.stagePoints[type.ordinal()][rank] : 0;
+    }
+
+    public int getSegmentPoints(SegmentType type, int rank)
+    {
+        // Points for passing a segment of the type in the given position (0 is first)
+        return rank < this.segmentWidth ? this.segmentPoints[type.ordinal()][rank] : 0;
+    }
+
+    public int getSegmentScorers(SegmentType type)
+    {
+        // Number of riders that can score in a segment of the type
+        return this.segmentScorers[type.ordinal()];
+    }
+
+    private static <T> int width(Map<T, int[]> table)
+    {
+        int width = 0;
+        for (int[] row : table.values())
+        {
+            if (row == null)
+            {
+                throw new IllegalArgumentException("Points tables cannot hold null rows.");
+            }
+            width = Math.max(width, row.length);
+        }
+        return width;
+    }
+
+    private static void copyRow(int[] points, int[] row)
+    {
+        for (int rank=0; rank<points.length; rank++)
+        {
+            if (points[rank] < 0)
+            {
+                throw new IllegalArgumentException("Points cannot be negative.");
+            }
+            row[rank] = points[rank];
+        }
+    }
+
+    private static ScoringScheme createDefault()
+    {
+        EnumMap<StageType, int[]> stagePoints = new EnumMap<StageType, int[]>(StageType.class);
+        stagePoints.put(StageType.FLAT,
+        new int[]{50, 30, 20, 18, 16, 14, 12, 10, 8, 7, 6, 5, 4, 3, 2});
+        stagePoints.put(StageType.MEDIUM_MOUNTAIN,
+        new int[]{30, 25, 22, 19, 17, 15, 13, 11, 9, 7, 6, 5, 4, 3, 2});
+        stagePoints.put(StageType.HIGH_MOUNTAIN,
+        new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1});
+        stagePoints.put(StageType.TT,
+        new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1});
+
+        EnumMap<SegmentType, int[]> segmentPoints = new EnumMap<SegmentType, int[]>(SegmentType.class);
+        segmentPoints.put(SegmentType.SPRINT,
+        new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1});
+        segmentPoints.put(SegmentType.C4,
+        new int[]{1});
+        segmentPoints.put(SegmentType.C3,
+        new int[]{2, 1});
+        segmentPoints.put(SegmentType.C2,
+        new int[]{5, 3, 2, 1});
+        segmentPoints.put(SegmentType.C1,
+        new int[]{10, 8, 6, 4, 2, 1});
+        segmentPoints.put(SegmentType.HC,
+        new int[]{20, 15, 12, 10, 8, 6, 4, 2});
+
+        return new ScoringScheme(stagePoints, segmentPoints);
+    }
+}
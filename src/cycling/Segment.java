@@ -11,17 +11,16 @@ public class Segment implements Serializable
     private SegmentType type;
     private double averageGradient;
     private double length;
-    private static int numberOfSegments;
 
-    public Segment(int stageId, double location, SegmentType type,
+    public Segment(int id, int stageId, double location, SegmentType type,
     double averageGradient, double length)
     {
+        this.id = id;
         this.stageId = stageId;
         this.location = location;
         this.type = type;
         this.averageGradient = averageGradient;
         this.length = length;
-        this.id = ++numberOfSegments;
     }
 
     public int getId()
@@ -85,9 +84,4 @@ public class Segment implements Serializable
     {
         this.length = length;
     }
-
-    public static int getNumberOfSegments()
-    {
-        return numberOfSegments;
-    }
 }
@@ -1,11 +1,10 @@
 package cycling;
 
-import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.stream.IntStream;
 
 public class Stage implements Serializable
 {
@@ -19,12 +18,37 @@ public class Stage implements Serializable
     private StageType type;
     private StageState state;
     private ArrayList<Integer> orderedSegments;
-    private HashMap<Integer, ArrayList<LocalTime>> riderResults;
-    private static int numberOfStages; // Starts 0
+    private ResultStore riderResults;
+    private long version; // Incremented whenever riderResults changes
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    // Checkpoint columns are sorted in parallel once there are at least this many times in total.
+    private static final int PARALLEL_PASSAGE_THRESHOLD = 1 << 16;
 
-    public Stage(int raceId, String name, String description, double length,
+    // Finishing times, kept in order as results are added and removed
+    private transient Leaderboard leaderboard;
+
+    // Ranking cache, rebuilt on the first read after riderResults changes.
+    // Readers may share a stage between threads, so the lazy builds below are synchronized.
+    private transient long rankingVersion;
+    private transient int[] rankedRiders;
+    private transient long[] rankedFinishes;
+    private transient long[] rankedAdjustedTimes;
+    private transient long[] rankedGapMillis;
+    private transient IntLongMap ranksByRider;
+    private transient long passageVersion;
+    private transient int[][] passageOrders; // passageOrders[checkpoint] holds ranks from getRanking()
+
+    public Stage(int id, int raceId, String name, String description, double length,
     LocalDateTime startTime, StageType type, StageState state)
     {
+        this(id, raceId, name, description, length, startTime, type, state, ResultStorage.HEAP);
+    }
+
+    public Stage(int id, int raceId, String name, String description, double length,
+    LocalDateTime startTime, StageType type, StageState state, ResultStorage resultStorage)
+    {
+        this.id = id;
         this.raceId = raceId;
         this.name = name;
         this.description = description;
@@ -33,8 +57,7 @@ public class Stage implements Serializable
         this.type = type;
         this.state = state;
         this.orderedSegments = new ArrayList<Integer>();
-        this.riderResults = new HashMap<Integer, ArrayList<LocalTime>>();
-        this.id = ++numberOfStages;
+        this.riderResults = resultStorage.newStore();
     }
 
     public int getId()
@@ -127,28 +150,234 @@ public class Stage implements Serializable
         this.orderedSegments.add(segmentId);
     }
 
+    public void removeSegment(int segmentId)
+    {
+        this.orderedSegments.remove(Integer.valueOf(segmentId));
+    }
+
     public void setSegments(ArrayList<Integer> segmentIds)
     {
         this.orderedSegments = segmentIds;
     }
 
-    public HashMap<Integer, ArrayList<LocalTime>> getRiderResults()
+    public ResultStore getRiderResults()
     {
         return this.riderResults;
     }
 
+    public void setResultStorage(ResultStorage resultStorage)
+    {
+        // Moves the results into a store of the given kind, if they aren't in one already.
+        if (this.riderResults.getStorage() != resultStorage)
+        {
+            ResultStore riderResults = resultStorage.newStore();
+            for (int row=0; row<this.riderResults.size(); row++)
+            {
+                int riderId = this.riderResults.getRiderId(row);
+                riderResults.add(riderId, this.riderResults.getCheckpoints(riderId));
+            }
+            this.riderResults = riderResults;
+        }
+    }
+
     public void addRiderResult(int riderId, LocalTime... checkpoints)
     {
-        this.riderResults.put(riderId, new ArrayList<LocalTime>(Arrays.asList(checkpoints)));
+        Leaderboard leaderboard = this.getLeaderboard();
+        this.riderResults.add(riderId, checkpoints);
+        leaderboard.add(this.riderResults.getFinishNanos(this.riderResults.getRow(riderId)), riderId);
+        this.version++;
+    }
+
+    public boolean removeRiderResult(int riderId)
+    {
+        int row = this.riderResults.getRow(riderId);
+        if (row == -1)
+        {
+            return false;
+        }
+
+        this.getLeaderboard().remove(this.riderResults.getFinishNanos(row), riderId);
+        this.riderResults.remove(riderId);
+        this.version++;
+        return true;
+    }
+
+    public long getVersion()
+    {
+        return this.version;
+    }
+
+    // The arrays below are shared with the cache, so callers must copy them before handing them out.
+
+    public int[] getRanking()
+    {
+        // Rider IDs sorted by finishing time
+        this.updateRanking();
+        return this.rankedRiders;
     }
 
-    public void setRiderResults(HashMap<Integer, ArrayList<LocalTime>> riderResults)
+    public long[] getRankedFinishes()
     {
-        this.riderResults = riderResults;
+        // Finishing times (as nanoseconds of the day), in the order of getRanking()
+        this.updateRanking();
+        return this.rankedFinishes;
     }
 
-    public static int getNumberOfStages()
+    public long[] getRankedAdjustedTimes()
     {
-        return numberOfStages;
+        // Adjusted elapsed times (as nanoseconds of the day), in the order of getRanking()
+        this.updateRanking();
+        return this.rankedAdjustedTimes;
+    }
+
+    public long[] getRankedGapMillis()
+    {
+        // Gaps between each adjusted time and the winner's, in milliseconds, in the order of getRanking()
+        this.updateRanking();
+        return this.rankedGapMillis;
+    }
+
+    public int getRank(int riderId)
+    {
+        // Index of the rider in getRanking(), or -1 if they have no result
+        int row = this.riderResults.getRow(riderId);
+        if (row == -1)
+        {
+            return -1;
+        }
+        return this.getLeaderboard().rankOf(this.riderResults.getFinishNanos(row), riderId);
+    }
+
+    public int[] getRankedRiders(int from, int count)
+    {
+        // The riders ranked from..from+count-1, read from the leaderboard without building the whole ranking
+        Leaderboard leaderboard = this.getLeaderboard();
+        from = Math.max(from, 0);
+        int[] riders = new int[Math.max(0, Math.min(count, leaderboard.size() - from))];
+        leaderboard.getRange(from, riders.length, riders, null);
+        return riders;
+    }
+
+    private synchronized Leaderboard getLeaderboard()
+    {
+        if (this.leaderboard == null)
+        {
+            // The leaderboard isn't saved, so a loaded stage builds it from its results.
+            Leaderboard leaderboard = new Leaderboard(this.riderResults.size());
+            for (int row=0; row<this.riderResults.size(); row++)
+            {
+                leaderboard.add(this.riderResults.getFinishNanos(row), this.riderResults.getRiderId(row));
+            }
+            this.leaderboard = leaderboard;
+        }
+        return this.leaderboard;
+    }
+
+    private synchronized void updateRanking()
+    {
+        if (this.rankedRiders != null && this.rankingVersion == this.version)
+        {
+            return;
+        }
+
+        // The leaderboard is already in order, so the ranking is read from it without sorting.
+        int size = this.riderResults.size();
+        int[] rankedRiders = new int[size];
+        long[] rankedFinishes = new long[size];
+        this.getLeaderboard().getRange(0, size, rankedRiders, rankedFinishes);
+
+        IntLongMap ranksByRider = new IntLongMap(size);
+        long[] rankedAdjustedTimes = new long[size];
+        long[] rankedGapMillis = new long[size];
+        for (int rank=0; rank<size; rank++)
+        {
+            ranksByRider.put(rankedRiders[rank], rank);
+
+            // A rider finishing less than a second after the rider ahead of them is in the same bunch,
+            // so takes the adjusted time of that rider. There are no adjustments on time-trials.
+            if (rank > 0 && this.type != StageType.TT
+                && rankedFinishes[rank] - rankedFinishes[rank - 1] < NANOS_PER_SECOND)
+            {
+                rankedAdjustedTimes[rank] = rankedAdjustedTimes[rank - 1];
+            }
+            else
+            {
+                rankedAdjustedTimes[rank] = rankedFinishes[rank];
+            }
+            rankedGapMillis[rank] = (rankedAdjustedTimes[rank] - rankedAdjustedTimes[0]) / NANOS_PER_MILLI;
+        }
+
+        this.rankedRiders = rankedRiders;
+        this.rankedFinishes = rankedFinishes;
+        this.rankedAdjustedTimes = rankedAdjustedTimes;
+        this.rankedGapMillis = rankedGapMillis;
+        this.ranksByRider = ranksByRider;
+        this.rankingVersion = this.version;
+    }
+
+    public int[] getPassageOrder(int checkpoint)
+    {
+        // Ranks (indexes into getRanking()) of the riders, in the order they passed the checkpoint
+        this.updatePassageOrders();
+        if (checkpoint < this.passageOrders.length)
+        {
+            return this.passageOrders[checkpoint];
+        }
+        return new int[0];
+    }
+
+    private synchronized void updatePassageOrders()
+    {
+        if (this.passageOrders != null && this.passageVersion == this.version)
+        {
+            return;
+        }
+
+        // The passages are given as ranks, so the ranking must be up to date.
+        this.updateRanking();
+        int size = this.riderResults.size();
+        int width = 0;
+        for (int row=0; row<size; row++)
+        {
+            width = Math.max(width, this.riderResults.getWidth(row));
+        }
+
+        // Each checkpoint column is sorted on its own, so the columns can be sorted at the same time.
+        int[][] passageOrders = new int[width][];
+        IntStream checkpoints = IntStream.range(0, width);
+        if (width > 1 && (long)size * width >= PARALLEL_PASSAGE_THRESHOLD)
+        {
+            checkpoints = checkpoints.parallel();
+        }
+        checkpoints.forEach(checkpoint -> passageOrders[checkpoint] = this.sortPassages(checkpoint));
+
+        this.passageOrders = passageOrders;
+        this.passageVersion = this.version;
+    }
+
+    private int[] sortPassages(int checkpoint)
+    {
+        // Sorts the riders who reached the checkpoint by their time there, then converts their IDs to ranks.
+        int size = this.riderResults.size();
+        int[] riders = new int[size];
+        long[] times = new long[size];
+        int count = 0;
+        for (int row=0; row<size; row++)
+        {
+            if (checkpoint < this.riderResults.getWidth(row))
+            {
+                riders[count] = this.riderResults.getRiderId(row);
+                times[count] = this.riderResults.getNanos(row, checkpoint);
+                count++;
+            }
+        }
+        Ranking.sort(times, riders, count);
+
+        int[] ranks = new int[count];
+        for (int i=0; i<count; i++)
+        {
+            ranks[i] = (int)this.ranksByRider.getOrDefault(riders[i], -1);
+        }
+        return ranks;
     }
 }
@@ -0,0 +1,52 @@
+package cycling;
+
+import java.time.LocalTime;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A rider's result waiting in a portal's ingest queue, along with the
+ * future completed once it has been registered (or rejected).
+ */
+public class SubmittedResult
+{
+    // Attributes
+    private final long generation; // The portal's ingest generation when the result was submitted
+    private final int stageId;
+    private final int riderId;
+    private final LocalTime[] checkpoints;
+    private final CompletableFuture<Void> future;
+
+    public SubmittedResult(long generation, int stageId, int riderId, LocalTime[] checkpoints)
+    {
+        this.generation = generation;
+        this.stageId = stageId;
+        this.riderId = riderId;
+        this.checkpoints = checkpoints;
+        this.future = new CompletableFuture<Void>();
+    }
+
+    public long getGeneration()
+    {
+        return this.generation;
+    }
+
+    public int getStageId()
+    {
+        return this.stageId;
+    }
+
+    public int getRiderId()
+    {
+        return this.riderId;
+    }
+
+    public LocalTime[] getCheckpoints()
+    {
+        return this.checkpoints;
+    }
+
+    public CompletableFuture<Void> getFuture()
+    {
+        return this.future;
+    }
+}
@@ -1,19 +1,21 @@
 package cycling;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 
 public class Team implements Serializable
 {
     private int id;
     private String name;
     private String description;
-    private static int numberOfTeams;
+    private ArrayList<Integer> riders;
 
-    public Team(String name, String description)
+    public Team(int id, String name, String description)
     {
+        this.id = id;
         this.name = name;
         this.description = description;
-        this.id = ++numberOfTeams;
+        this.riders = new ArrayList<Integer>();
     }
 
     public int getId()
@@ -46,8 +48,18 @@ public class Team implements Serializable
         this.description = description;
     }
 
-    public static int getNumberOfTeams()
+    public ArrayList<Integer> getRiders()
+    {
+        return this.riders;
+    }
+
+    public void addRider(int riderId)
+    {
+        this.riders.add(riderId);
+    }
+
+    public void removeRider(int riderId)
     {
-        return numberOfTeams;
+        this.riders.remove(Integer.valueOf(riderId));
     }
 }
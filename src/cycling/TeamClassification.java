@@ -0,0 +1,39 @@
+package cycling;
+
+/**
+ * The team classification of a race, as cached on the race: the classified
+ * teams in order, with each team's total time and its gap to the leading
+ * team. The arrays are shared with the cache, so they must not be changed;
+ * the portal copies them before handing them out.
+ */
+public class TeamClassification
+{
+    // Attributes
+    private final int[] teams; // Team IDs, from the lowest total time; equal times are ordered by ID
+    private final long[] timesNanos;
+    private final long[] gapMillis;
+
+    public TeamClassification(int[] teams, long[] timesNanos, long[] gapMillis)
+    {
+        this.teams = teams;
+        this.timesNanos = timesNanos;
+        this.gapMillis = gapMillis;
+    }
+
+    public int[] getTeams()
+    {
+        return this.teams;
+    }
+
+    public long[] getTimesNanos()
+    {
+        // In the order of getTeams()
+        return this.timesNanos;
+    }
+
+    public long[] getGapMillis()
+    {
+        // In the order of getTeams(), so the first is 0
+        return this.gapMillis;
+    }
+}